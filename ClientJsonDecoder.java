@@ -0,0 +1,308 @@
+/**
+ * ClientJsonDecoder.java
+ *
+ * Reads the JSON messages a WebSocket client sends once it is authenticated:
+ *
+ *   {"action":"CHOOSE_PLAYER","p":1,"room":"lobby","rate":20}   ("room", "rate" optional)
+ *   {"type":"MOVE","dir":-1}
+ *   {"type":"CONTROL","action":"READY"}
+ *
+ * in one pass over the characters, without building a tree, boxing numbers or
+ * creating strings: keys and string values are compared against the few names the
+ * server understands, numbers are accumulated as ints, and anything else (unknown
+ * keys, nested values) is skipped. Keys may come in any order; whitespace and JSON
+ * string escapes are handled as any JSON parser would.
+ *
+ * The results of the last {@link #decode} are left in the public fields. A decoder
+ * holds one message at a time and is not thread-safe; PongServer keeps one per
+ * WebSocket worker thread.
+ */
+public final class ClientJsonDecoder {
+    /** What a message asks for (the return value of {@link #decode}). */
+    public static final int OTHER         = 0;
+    public static final int MOVE          = 1;
+    public static final int CONTROL       = 2;
+    public static final int CHOOSE_PLAYER = 3;
+
+    private static final ControlCommand.Type[] CONTROL_TYPES = ControlCommand.Type.values();
+
+    // Values of "type" and "action" other than a ControlCommand.Type ordinal
+    private static final int ABSENT = -1;
+    private static final int UNKNOWN = -2;
+    private static final int ACTION_CHOOSE_PLAYER = -3;
+
+    // Deepest nesting skipped inside an unknown value; clients never send any
+    private static final int MAX_DEPTH = 16;
+
+    /** MOVE: the direction, reduced to −1/0/1. */
+    public int dir;
+    /** CONTROL: the requested action. */
+    public ControlCommand.Type control;
+    /** CHOOSE_PLAYER: the slot asked for ("p"), the room or null, the send rate or 0. */
+    public int player;
+    public String room;
+    public int rate;
+
+    private CharSequence json;
+    private int pos;
+    private int type, action;
+    private boolean hasDir, hasPlayer;
+
+    // Decoded text of the last string read (reused)
+    private final StringBuilder text = new StringBuilder(32);
+
+    /**
+     * Decode one message and return what it asks for. Throws IllegalArgumentException
+     * if it is not a JSON object or lacks a field its kind requires.
+     */
+    public int decode(CharSequence message) {
+        json = message;
+        pos = 0;
+        type = action = ABSENT;
+        hasDir = hasPlayer = false;
+        dir = player = rate = 0;
+        control = null;
+        room = null;
+
+        skipSpace();
+        expect('{');
+        skipSpace();
+        if (peek() != '}') {
+            do {
+                skipSpace();
+                readString();
+                skipSpace();
+                expect(':');
+                skipSpace();
+                readField();
+                skipSpace();
+            } while (accept(','));
+        }
+        expect('}');
+        skipSpace();
+        if (pos != json.length()) throw error("trailing characters");
+        json = null;
+        return kind();
+    }
+
+    private int kind() {
+        if (type == MOVE) {
+            if (!hasDir) throw new IllegalArgumentException("MOVE without dir");
+            return MOVE;
+        }
+        if (type == CONTROL) {
+            if (action < 0) throw new IllegalArgumentException("CONTROL without a valid action");
+            control = CONTROL_TYPES[action];
+            return CONTROL;
+        }
+        if (type == ABSENT && action == ACTION_CHOOSE_PLAYER) {
+            if (!hasPlayer) throw new IllegalArgumentException("CHOOSE_PLAYER without p");
+            return CHOOSE_PLAYER;
+        }
+        return OTHER;
+    }
+
+    // ─── Fields ───────────────────────────────────────────────────────────────────
+
+    /** Read the value of the key in text, keeping it if the key is one we know. */
+    private void readField() {
+        if (is("type")) {
+            type = readName("MOVE", "CONTROL");
+        } else if (is("action")) {
+            action = readAction();
+        } else if (is("dir")) {
+            dir = Integer.signum(readInt());
+            hasDir = true;
+        } else if (is("p")) {
+            player = readInt();
+            hasPlayer = true;
+        } else if (is("rate")) {
+            rate = readInt();
+        } else if (is("room")) {
+            if (peek() == 'n') {
+                readLiteral("null");
+            } else {
+                readString();
+                room = text.toString();
+            }
+        } else {
+            skipValue();
+        }
+    }
+
+    /** Read a string value; returns MOVE if it is a, CONTROL if b, else UNKNOWN. */
+    private int readName(String a, String b) {
+        if (peek() != '"') { skipValue(); return UNKNOWN; }
+        readString();
+        return is(a) ? MOVE : is(b) ? CONTROL : UNKNOWN;
+    }
+
+    private int readAction() {
+        if (peek() != '"') { skipValue(); return UNKNOWN; }
+        readString();
+        if (is("CHOOSE_PLAYER")) return ACTION_CHOOSE_PLAYER;
+        for (ControlCommand.Type t : CONTROL_TYPES) {
+            if (is(t.name())) return t.ordinal();
+        }
+        return UNKNOWN;
+    }
+
+    private boolean is(String name) {
+        return name.contentEquals(text);
+    }
+
+    // ─── Tokens ───────────────────────────────────────────────────────────────────
+
+    /** Read a JSON string into text. */
+    private void readString() {
+        expect('"');
+        text.setLength(0);
+        while (true) {
+            if (pos >= json.length()) throw error("unterminated string");
+            char c = json.charAt(pos++);
+            if (c == '"') return;
+            if (c != '\\') {
+                text.append(c);
+                continue;
+            }
+            if (pos >= json.length()) throw error("unterminated string");
+            char e = json.charAt(pos++);
+            switch (e) {
+                case '"': case '\\': case '/': text.append(e); break;
+                case 'b': text.append('\b'); break;
+                case 'f': text.append('\f'); break;
+                case 'n': text.append('\n'); break;
+                case 'r': text.append('\r'); break;
+                case 't': text.append('\t'); break;
+                case 'u':
+                    if (pos + 4 > json.length()) throw error("bad \\u escape");
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(json.charAt(pos++), 16);
+                        if (digit < 0) throw error("bad \\u escape");
+                        code = code << 4 | digit;
+                    }
+                    text.append((char) code);
+                    break;
+                default:
+                    throw error("bad escape");
+            }
+        }
+    }
+
+    /** Read an integer number (a fraction or exponent is rejected, as getAsInt would). */
+    private int readInt() {
+        boolean negative = accept('-');
+        int start = pos;
+        long value = 0;
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c < '0' || c > '9') break;
+            value = value * 10 + (c - '0');
+            if (value > Integer.MAX_VALUE + 1L) throw error("number out of range");
+            pos++;
+        }
+        if (pos == start) throw error("expected a number");
+        if (pos < json.length() && (peek() == '.' || peek() == 'e' || peek() == 'E')) {
+            throw error("expected an integer");
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) throw error("number out of range");
+        return (int) value;
+    }
+
+    /**
+     * Skip any JSON value. Nested objects and arrays are walked without recursion,
+     * keeping one bit per open level (set for an object), so a hostile message can
+     * only fail with an IllegalArgumentException past MAX_DEPTH, never overflow the
+     * worker's stack.
+     */
+    private void skipValue() {
+        long objects = 0;
+        int depth = 0;
+        while (true) {
+            // At the start of a value
+            char c = peek();
+            if (c == '{' || c == '[') {
+                if (depth == MAX_DEPTH) throw error("nested too deeply");
+                boolean object = c == '{';
+                pos++;
+                skipSpace();
+                if (!accept(object ? '}' : ']')) {
+                    objects = object ? objects | 1L << depth : objects & ~(1L << depth);
+                    depth++;
+                    if (object) skipKey();
+                    continue;
+                }
+            } else if (c == '"') {
+                readString();
+            } else if (c == 't') {
+                readLiteral("true");
+            } else if (c == 'f') {
+                readLiteral("false");
+            } else if (c == 'n') {
+                readLiteral("null");
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+                accept('-');
+                while (pos < json.length() && "0123456789.eE+-".indexOf(json.charAt(pos)) >= 0) pos++;
+            } else {
+                throw error("unexpected character");
+            }
+            // A value is complete: move on to the next element, or close its containers
+            while (true) {
+                if (depth == 0) return;
+                boolean object = (objects >>> (depth - 1) & 1) != 0;
+                skipSpace();
+                if (accept(',')) {
+                    skipSpace();
+                    if (object) skipKey();
+                    break;
+                }
+                expect(object ? '}' : ']');
+                depth--;
+            }
+        }
+    }
+
+    /** Skip an object key and its colon, up to the value. */
+    private void skipKey() {
+        skipSpace();
+        readString();
+        skipSpace();
+        expect(':');
+        skipSpace();
+    }
+
+    private void readLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) expect(literal.charAt(i));
+    }
+
+    private void skipSpace() {
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') return;
+            pos++;
+        }
+    }
+
+    private char peek() {
+        if (pos >= json.length()) throw error("unexpected end");
+        return json.charAt(pos);
+    }
+
+    private boolean accept(char c) {
+        if (pos < json.length() && json.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (!accept(c)) throw error("expected '" + c + "'");
+    }
+
+    private IllegalArgumentException error(String what) {
+        return new IllegalArgumentException(what + " at offset " + pos + " of WebSocket message");
+    }
+}
@@ -2,8 +2,10 @@ import java.io.Serializable;
 
 /**
  * Sent from client to server for ready, pause, resume, or restart actions.
+ * There is one shared, immutable instance per type ({@link #of}); hot paths pass
+ * the Type itself.
  */
-public class ControlCommand implements Serializable {
+public final class ControlCommand implements Serializable {
     private static final long serialVersionUID = 1L;
 
     public enum Type {
@@ -13,9 +15,25 @@ public class ControlCommand implements Serializable {
         RESTART
     }
 
-    public Type type;
+    public static final ControlCommand READY   = new ControlCommand(Type.READY);
+    public static final ControlCommand PAUSE   = new ControlCommand(Type.PAUSE);
+    public static final ControlCommand RESUME  = new ControlCommand(Type.RESUME);
+    public static final ControlCommand RESTART = new ControlCommand(Type.RESTART);
 
-    public ControlCommand(Type type) {
+    private static final ControlCommand[] BY_TYPE = { READY, PAUSE, RESUME, RESTART };
+
+    public final Type type;
+
+    private ControlCommand(Type type) {
         this.type = type;
     }
-}
\ No newline at end of file
+
+    public static ControlCommand of(Type type) {
+        return BY_TYPE[type.ordinal()];
+    }
+
+    /** Deserialized commands are the shared instances too. */
+    private Object readResolve() {
+        return of(type);
+    }
+}
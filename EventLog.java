@@ -0,0 +1,169 @@
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * EventLog.java
+ *
+ * Asynchronous server event log. Tick workers, the TCP selector and WebSocket
+ * threads only drop an event into a bounded ring buffer (a CAS and a few array
+ * writes, no formatting and no lock); a background thread turns the events into
+ * lines and writes them to stdout in batches. If stdout is slow the ring fills up
+ * and new events are dropped and counted, so logging can never stall a tick.
+ *
+ * Each event is a name plus optional match (room id), player slot, detail text and
+ * exception, written as one line:
+ *
+ *   2026-01-01T12:00:00.123Z event=player.ready match=r1 player=1
+ *   2026-01-01T12:00:05.456Z event=player.disconnected match=r1 player=2 detail="end of stream"
+ *
+ * Events without a detail allocate nothing; callers only build a detail string for
+ * rare events.
+ */
+public final class EventLog {
+    private static final int  CAPACITY = 1 << 14;
+    private static final int  MASK = CAPACITY - 1;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    // Ring slots. seq[i] == t means slot i is free for the producer of ticket t;
+    // t + 1 means it holds that ticket's event, ready for the writer.
+    private static final AtomicLongArray seq = new AtomicLongArray(CAPACITY);
+    private static final long[]      times   = new long[CAPACITY];
+    private static final String[]    events  = new String[CAPACITY];
+    private static final String[]    matches = new String[CAPACITY];
+    private static final int[]       players = new int[CAPACITY];
+    private static final String[]    details = new String[CAPACITY];
+    private static final Throwable[] errors  = new Throwable[CAPACITY];
+
+    private static final AtomicLong tail = new AtomicLong();
+    private static long head;           // next ticket to write (guarded by the class lock)
+    private static long reportedDrops;  // drops already written (guarded by the class lock)
+    private static final LongAdder dropped = new LongAdder();
+
+    private static final PrintStream out = System.out;
+    private static final StringBuilder line = new StringBuilder(256);
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) seq.set(i, i);
+        Thread writer = new Thread(EventLog::writerLoop, "event-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(EventLog::drain, "event-log-flush"));
+    }
+
+    private EventLog() { }
+
+    public static void log(String event) {
+        log(event, null, 0, null, null);
+    }
+
+    public static void log(String event, String detail) {
+        log(event, null, 0, detail, null);
+    }
+
+    public static void log(String event, String match, int player) {
+        log(event, match, player, null, null);
+    }
+
+    public static void log(String event, String match, int player, String detail) {
+        log(event, match, player, detail, null);
+    }
+
+    /**
+     * Queue one event; match may be null and player 0 when they do not apply. Never
+     * blocks: if the ring is full the event is dropped and counted.
+     */
+    public static void log(String event, String match, int player, String detail, Throwable error) {
+        long t;
+        int i;
+        while (true) {
+            t = tail.get();
+            i = (int) t & MASK;
+            long s = seq.get(i);
+            if (s == t) {
+                if (tail.compareAndSet(t, t + 1)) break;
+            } else if (s < t) {
+                dropped.increment();  // the writer has not freed this slot yet: full
+                return;
+            }
+            // else another producer took ticket t; try the next one
+        }
+        times[i]   = System.currentTimeMillis();
+        events[i]  = event;
+        matches[i] = match;
+        players[i] = player;
+        details[i] = detail;
+        errors[i]  = error;
+        seq.set(i, t + 1);  // publish
+    }
+
+    /** Events dropped because the ring was full. */
+    public static long dropped() {
+        return dropped.sum();
+    }
+
+    // ─── Writer ───────────────────────────────────────────────────────────────────
+
+    private static void writerLoop() {
+        while (true) {
+            if (drain() == 0) LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    /** Write every published event; returns how many. */
+    private static synchronized int drain() {
+        int n = 0;
+        while (true) {
+            int i = (int) head & MASK;
+            if (seq.get(i) != head + 1) break;
+            format(i);
+            Throwable error = errors[i];
+            events[i] = matches[i] = details[i] = null;
+            errors[i] = null;
+            seq.set(i, head + CAPACITY);  // free the slot for the producer one lap ahead
+            head++;
+            n++;
+            out.append(line);
+            if (error != null) error.printStackTrace(out);
+        }
+        long drops = dropped.sum();
+        if (drops != reportedDrops) {
+            line.setLength(0);
+            DateTimeFormatter.ISO_INSTANT.formatTo(Instant.now(), line);
+            line.append(" event=log.dropped detail=\"").append(drops - reportedDrops).append(" events\"\n");
+            out.append(line);
+            reportedDrops = drops;
+            n++;
+        }
+        if (n > 0) out.flush();
+        return n;
+    }
+
+    private static void format(int i) {
+        line.setLength(0);
+        DateTimeFormatter.ISO_INSTANT.formatTo(Instant.ofEpochMilli(times[i]), line);
+        line.append(" event=").append(events[i]);
+        if (matches[i] != null) line.append(" match=").append(matches[i]);
+        if (players[i] != 0) line.append(" player=").append(players[i]);
+        if (details[i] != null && !details[i].isEmpty()) quote(details[i]);
+        if (errors[i] != null) line.append(" error=\"").append(errors[i].getClass().getName()).append('"');
+        line.append('\n');
+    }
+
+    private static void quote(String detail) {
+        line.append(" detail=\"");
+        for (int k = 0; k < detail.length(); k++) {
+            char c = detail.charAt(k);
+            if (c == '"' || c == '\\') line.append('\\').append(c);
+            else if (c == '\n')        line.append("\\n");
+            else if (c < ' ')          line.append(' ');
+            else                       line.append(c);
+        }
+        line.append('"');
+    }
+}
@@ -24,6 +24,11 @@ public class GameState implements Serializable {
     // Indicates if the game is over and who won (1 or 2), 0 if ongoing
     public int winner;
 
+    // Input acknowledgement per player: seq of the PlayerCommand in effect, and how many
+    // pixels it has moved the paddle so far (lets the client replay the rest)
+    public int ack1, ack2;
+    public int ackMoved1, ackMoved2;
+
     public GameState() {
         ballX = ballY = 0;
         ballDX = ballDY = 0;
@@ -32,5 +37,27 @@ public class GameState implements Serializable {
         ready1 = ready2 = false;
         paused = false;
         winner = 0;
+        ack1 = ack2 = 0;
+        ackMoved1 = ackMoved2 = 0;
+    }
+
+    /** Overwrite every field with the values from other. */
+    public void copyFrom(GameState other) {
+        ballX    = other.ballX;
+        ballY    = other.ballY;
+        ballDX   = other.ballDX;
+        ballDY   = other.ballDY;
+        paddle1Y = other.paddle1Y;
+        paddle2Y = other.paddle2Y;
+        score1   = other.score1;
+        score2   = other.score2;
+        ready1   = other.ready1;
+        ready2   = other.ready2;
+        paused   = other.paused;
+        winner   = other.winner;
+        ack1     = other.ack1;
+        ack2     = other.ack2;
+        ackMoved1 = other.ackMoved1;
+        ackMoved2 = other.ackMoved2;
     }
 }
\ No newline at end of file
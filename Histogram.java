@@ -0,0 +1,158 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram.java
+ *
+ * Fixed-size, lock-free histogram of non-negative long values (typically nanoseconds)
+ * with about 6% precision at any magnitude: values below 16 get a bucket each, and
+ * every power of two above that is split into 16 equal sub-buckets, so 960 counters
+ * cover the whole long range. Recording is a few atomic updates and never
+ * allocates. In the server each Histogram has a single writer: the TickScheduler
+ * clock thread for whole ticks, or one tick worker for its shard of a
+ * PerThreadHistogram, so the updates never contend and readers (the metrics
+ * scrape) merge shards instead of sharing one. Several writers stay correct
+ * (LoadGenerator's WebSocket callbacks share one), they only contend.
+ *
+ * Percentiles are read from a live histogram without stopping writers, so they can
+ * be off by the few values recorded while reading. reset() is meant for interval
+ * reports (read, then reset) and is not atomic with respect to concurrent records;
+ * to report recent values without resetting, take a Snapshot now and then and look
+ * at what was recorded since.
+ */
+public final class Histogram {
+    private static final int SUB_BITS    = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS     = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /** Record one value; negative values count as 0. */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        long m;
+        while (value > (m = max.get()) && !max.compareAndSet(m, value)) { }
+    }
+
+    public long count() { return count.sum(); }
+    public long sum()   { return sum.sum(); }
+    public long max()   { return max.get(); }
+
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * The value at percentile p (0–100): the midpoint of the bucket holding it, never
+     * more than max(). Returns 0 for an empty histogram.
+     */
+    public long percentile(double p) {
+        return snapshot().percentile(p);
+    }
+
+    /** A copy of the current counts. */
+    public Snapshot snapshot() {
+        Snapshot s = new Snapshot();
+        addTo(s);
+        return s;
+    }
+
+    /** Add the current counts to s, e.g. to merge several histograms into one snapshot. */
+    public void addTo(Snapshot s) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = counts.get(i);
+            s.counts[i] += c;
+            s.count += c;
+        }
+        s.sum += sum.sum();
+        s.max = Math.max(s.max, max.get());
+    }
+
+    /** Forget every recorded value. */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    // ─── Snapshots ────────────────────────────────────────────────────────────────
+
+    /**
+     * Counts copied out of one or more histograms. Counts only grow, so two snapshots
+     * of the same histograms give the values recorded between them (since).
+     */
+    public static final class Snapshot {
+        final long[] counts = new long[BUCKETS];
+        long count, sum, max;
+
+        /** An empty snapshot, to merge histograms into with addTo. */
+        public Snapshot() { }
+
+        public long count() { return count; }
+        public long sum()   { return sum; }
+        public long max()   { return max; }
+
+        /** As Histogram.percentile. */
+        public long percentile(double p) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(p / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(max, lowerBound(i) + (upperBound(i) - lowerBound(i)) / 2);
+            }
+            return max;
+        }
+
+        /**
+         * The values recorded after earlier, a snapshot of the same histograms. Its max
+         * is the top of the highest bucket hit, so it is as precise as the buckets.
+         */
+        public Snapshot since(Snapshot earlier) {
+            Snapshot d = new Snapshot();
+            int top = -1;
+            for (int i = 0; i < BUCKETS; i++) {
+                long c = counts[i] - earlier.counts[i];
+                d.counts[i] = c;
+                d.count += c;
+                if (c > 0) top = i;
+            }
+            d.sum = sum - earlier.sum;
+            d.max = top < 0 ? 0 : Math.min(max, upperBound(top));
+            return d;
+        }
+    }
+
+    // ─── Buckets ──────────────────────────────────────────────────────────────────
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exp = 63 - Long.numberOfLeadingZeros(value);  // ≥ SUB_BITS
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int exp = index / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (exp - SUB_BITS);
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int exp = index / SUB_BUCKETS + SUB_BITS - 1;
+        long width = 1L << (exp - SUB_BITS);
+        long lower = lowerBound(index);
+        return lower > Long.MAX_VALUE - width ? Long.MAX_VALUE : lower + width - 1;
+    }
+}
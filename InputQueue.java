@@ -0,0 +1,76 @@
+/**
+ * InputQueue.java
+ *
+ * One player's movement inputs on their way from the network thread that reads them
+ * to the room tick that applies them. It is a bounded single-producer/single-consumer
+ * ring of PlayerCommand codes ({@link PlayerCommand#code}), so queueing an input
+ * allocates nothing and neither side takes a lock: the producer publishes an entry
+ * with a volatile write of its index, and the consumer reads that index once per poll.
+ *
+ * Unlike a single "current command" slot, nothing is overwritten: a key press and
+ * release that both arrive between two ticks are applied on consecutive ticks, so
+ * even a tap shorter than a tick moves the paddle.
+ *
+ * Exactly one thread may offer at a time. A room's slot changes hands only through
+ * the room lock (seat/release), which orders one producer's writes before the next's.
+ */
+public final class InputQueue {
+    /** Returned by {@link #poll} when no input is waiting. Command codes are never negative. */
+    public static final int NONE = -1;
+
+    // Inputs that can wait at once (power of two). Far more than a player can send by
+    // hand between two ticks; beyond it, offers fail until the tick catches up.
+    static final int CAPACITY = 64;
+
+    // If more than this many inputs are waiting, poll skips to the newest ones, so a
+    // flood of inputs costs its sender at most this many ticks of lag
+    static final int MAX_BACKLOG = 3;
+
+    private final int[] ring = new int[CAPACITY];
+
+    private volatile long head;  // next entry to poll; written by the consumer only
+    private volatile long tail;  // next entry to fill; written by the producer only
+    private long headSeen;       // producer's last read of head
+
+    // ─── Producer ─────────────────────────────────────────────────────────────────
+
+    /** Queue a command code. Returns false, dropping it, if the queue is full. */
+    public boolean offer(int input) {
+        long t = tail;
+        if (t - headSeen == CAPACITY) {
+            headSeen = head;
+            if (t - headSeen == CAPACITY) return false;
+        }
+        ring[(int) t & (CAPACITY - 1)] = input;
+        tail = t + 1;
+        return true;
+    }
+
+    // ─── Consumer ─────────────────────────────────────────────────────────────────
+
+    /** Take the oldest waiting input (after skipping any backlog), or NONE. */
+    public int poll() {
+        long h = head;
+        long t = tail;
+        if (h == t) return NONE;
+        if (t - h > MAX_BACKLOG) h = t - MAX_BACKLOG;
+        int input = ring[(int) h & (CAPACITY - 1)];
+        head = h + 1;
+        return input;
+    }
+
+    /** Take the newest waiting input and drop the rest, or NONE if none is waiting. */
+    public int latest() {
+        long h = head;
+        long t = tail;
+        if (h == t) return NONE;
+        int input = ring[(int) (t - 1) & (CAPACITY - 1)];
+        head = t;
+        return input;
+    }
+
+    /** Drop every waiting input. */
+    public void clear() {
+        head = tail;
+    }
+}
@@ -0,0 +1,575 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LoadGenerator.java
+ *
+ * Headless load test for PongServer. Opens N TCP sessions and M WebSocket sessions
+ * that behave like players: each one authenticates, takes a seat, clicks READY,
+ * sends random MOVE inputs while the match is on and RESTART when it is over, so
+ * rooms cycle through matches for as long as the test runs.
+ *   - TCP sessions do the ENTER_SECRET handshake and speak WireProtocol frames; the
+ *     server pairs them into rooms as they arrive.
+ *   - WebSocket sessions send the secret and CHOOSE_PLAYER (two per room, named
+ *     "load-ws-<n>"), using the binary subprotocol, or JSON with --json.
+ * All TCP sessions share one selector thread; WebSocket sessions share the JDK
+ * HttpClient's, so thousands of sessions need only a handful of threads.
+ *
+ * Every report interval it prints:
+ *   - sessions up (seated and receiving state), and closed;
+ *   - state messages and bytes received per second, MOVE inputs sent per second;
+ *   - input latency: from sending a MOVE to the first state message acknowledging
+ *     its seq (queueing, waiting for the tick, the send interval and both network
+ *     legs). JSON sessions send no seq and are not counted;
+ *   - state interval: the gap between consecutive state messages during play. At
+ *     the server's send rate it sits at 1000/SEND_RATE ms; a tick that overruns or
+ *     a backed-up broadcast shows up as a wider spread and a longer tail.
+ *
+ * Usage: java -cp "out:libs/*" LoadGenerator [--host localhost] [--tcp 100] [--ws 100]
+ *            [--json] [--duration 60] [--input-hz 5] [--ramp 200] [--report 5]
+ * The secret is taken from PONG_SECRET, as for the server.
+ */
+public class LoadGenerator {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long LOOP_NANOS = 5 * MS;
+
+    // Options
+    private String host = "localhost";
+    private int tcpSessions = 100;
+    private int wsSessions = 100;
+    private boolean json;
+    private int durationSeconds = 60;
+    private double inputHz = 5;
+    private int rampPerSecond = 200;
+    private int reportSeconds = 5;
+    private String secret;
+
+    // Results, this interval and since the start
+    private final Histogram inputLatency = new Histogram();
+    private final Histogram stateInterval = new Histogram();
+    private final Histogram totalInputLatency = new Histogram();
+    private final Histogram totalStateInterval = new Histogram();
+    private final AtomicLong stateMessages = new AtomicLong();
+    private final AtomicLong stateBytes = new AtomicLong();
+    private final AtomicLong inputsSent = new AtomicLong();
+    private final AtomicInteger up = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+
+    private final List<Bot> bots = new ArrayList<>();
+    private int tcpOpened, wsOpened;
+    private final SplittableRandom random = new SplittableRandom();
+    private Selector selector;
+    private HttpClient http;
+
+    public static void main(String[] args) throws IOException {
+        LoadGenerator load = new LoadGenerator();
+        load.parse(args);
+        load.run();
+    }
+
+    private void parse(String[] args) {
+        secret = System.getenv("PONG_SECRET");
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--json")) { json = true; continue; }
+            if (i + 1 >= args.length) usage("missing value for " + arg);
+            String value = args[++i];
+            switch (arg) {
+                case "--host":     host = value; break;
+                case "--tcp":      tcpSessions = Integer.parseInt(value); break;
+                case "--ws":       wsSessions = Integer.parseInt(value); break;
+                case "--duration": durationSeconds = Integer.parseInt(value); break;
+                case "--input-hz": inputHz = Double.parseDouble(value); break;
+                case "--ramp":     rampPerSecond = Integer.parseInt(value); break;
+                case "--report":   reportSeconds = Integer.parseInt(value); break;
+                default: usage("unknown option " + arg);
+            }
+        }
+        if (secret == null || secret.isEmpty()) usage("PONG_SECRET environment variable not set");
+    }
+
+    private static void usage(String error) {
+        System.err.println("Error: " + error);
+        System.err.println("Usage: java LoadGenerator [--host localhost] [--tcp 100] [--ws 100] [--json]"
+            + " [--duration 60] [--input-hz 5] [--ramp 200] [--report 5]");
+        System.exit(1);
+    }
+
+    // ─── Main loop ────────────────────────────────────────────────────────────────
+
+    private void run() throws IOException {
+        selector = Selector.open();
+        http = HttpClient.newHttpClient();
+        int total = tcpSessions + wsSessions;
+        System.out.println(">> Load: " + tcpSessions + " TCP and " + wsSessions + (json ? " JSON" : " binary")
+            + " WebSocket sessions against " + host + " for " + durationSeconds + " s, "
+            + inputHz + " inputs/s each");
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long reportEvery = TimeUnit.SECONDS.toNanos(reportSeconds);
+        long nextReport = start + reportEvery;
+        long lastReport = start;
+        while (true) {
+            long now = System.nanoTime();
+            if (now - end >= 0) break;
+
+            // Open sessions at the ramp rate, TCP first, alternating between the two kinds
+            long due = Math.min(total, 1 + (now - start) * rampPerSecond / TimeUnit.SECONDS.toNanos(1));
+            while (bots.size() < due) openNext();
+
+            selector.select(Math.max(1, LOOP_NANOS / MS));
+            now = System.nanoTime();
+            for (SelectionKey key : selector.selectedKeys()) {
+                ((TcpBot) key.attachment()).ready(key, now);
+            }
+            selector.selectedKeys().clear();
+
+            for (Bot bot : bots) bot.drive(now);
+
+            if (now - nextReport >= 0) {
+                report((now - start) / TimeUnit.SECONDS.toNanos(1), now - lastReport);
+                lastReport = now;
+                nextReport += reportEvery;
+            }
+        }
+        for (Bot bot : bots) bot.close();
+        summary();
+        System.exit(0);
+    }
+
+    private void openNext() {
+        boolean tcp = wsOpened >= wsSessions || (tcpOpened < tcpSessions && tcpOpened <= wsOpened);
+        Bot bot = tcp ? new TcpBot() : new WsBot(wsOpened);
+        if (tcp) tcpOpened++; else wsOpened++;
+        bots.add(bot);
+        bot.open();
+    }
+
+    // ─── Reports ──────────────────────────────────────────────────────────────────
+
+    private void report(long second, long elapsed) {
+        double seconds = elapsed / 1e9;
+        System.out.println(String.format(Locale.ROOT,
+            "[%4ds] %d/%d up, %d closed | state %,.0f msg/s %,.1f KB/s | inputs %,.0f/s",
+            second, up.get(), bots.size(), closed.get(),
+            stateMessages.getAndSet(0) / seconds, stateBytes.getAndSet(0) / 1024.0 / seconds,
+            inputsSent.getAndSet(0) / seconds));
+        System.out.println("        input latency  " + millis(inputLatency));
+        System.out.println("        state interval " + millis(stateInterval));
+        inputLatency.reset();
+        stateInterval.reset();
+    }
+
+    private void summary() {
+        System.out.println(">> Totals over " + durationSeconds + " s (" + bots.size() + " sessions, "
+            + closed.get() + " closed)");
+        System.out.println("        input latency  " + millis(totalInputLatency));
+        System.out.println("        state interval " + millis(totalStateInterval));
+    }
+
+    private static String millis(Histogram h) {
+        if (h.count() == 0) return "(no samples)";
+        return String.format(Locale.ROOT, "ms  p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f  (%,d samples)",
+            h.percentile(50) / 1e6, h.percentile(90) / 1e6, h.percentile(99) / 1e6,
+            h.percentile(99.9) / 1e6, h.max() / 1e6, h.count());
+    }
+
+    // ─── Sessions ─────────────────────────────────────────────────────────────────
+
+    /** One simulated player. Subclasses move the bytes; this decides what to send. */
+    private abstract class Bot {
+        final GameState state = new GameState();
+        int slot;                        // 1 or 2; 0 until a TCP session is told its SEAT
+        boolean tracksAcks = true;       // false if MOVEs carry no seq (JSON)
+        boolean seated, readySent, restartSent, wasPlaying;
+        long lastStateAt, nextInputAt;
+        int dir;
+
+        // MOVEs in flight, by seq (mod 64): when each was sent, 0 once acknowledged
+        int seq = random.nextInt(1 << 16);
+        final int[] sentSeq = new int[64];
+        final long[] sentAt = new long[64];
+
+        abstract void open();
+        abstract void close();
+        abstract void sendMove(int dir, int seq);
+        abstract void sendControl(ControlCommand.Type type);
+
+        boolean playing() {
+            return seated && state.ready1 && state.ready2 && state.winner == 0 && !state.paused;
+        }
+
+        /** Called with state holding the newest message. */
+        synchronized void onState(long now, int bytes) {
+            stateMessages.incrementAndGet();
+            stateBytes.addAndGet(bytes);
+            if (!seated) {
+                seated = true;
+                up.incrementAndGet();
+            }
+            boolean playing = playing();
+            if (playing && wasPlaying) {
+                stateInterval.record(now - lastStateAt);
+                totalStateInterval.record(now - lastStateAt);
+            }
+            wasPlaying = playing;
+            lastStateAt = now;
+
+            acknowledged(now, slot == 1 ? state.ack1 : state.ack2);
+
+            if (state.winner != 0) {
+                if (!restartSent) {
+                    sendControl(ControlCommand.Type.RESTART);
+                    restartSent = true;
+                    readySent = false;
+                }
+            } else if (!readySent) {
+                sendControl(ControlCommand.Type.READY);
+                readySent = true;
+                restartSent = false;
+            }
+        }
+
+        private void acknowledged(long now, int ack) {
+            int i = ack & 63;
+            if (sentAt[i] == 0 || sentSeq[i] != ack) return;
+            inputLatency.record(now - sentAt[i]);
+            totalInputLatency.record(now - sentAt[i]);
+            sentAt[i] = 0;
+        }
+
+        /** Send the next random input if it is due. */
+        synchronized void drive(long now) {
+            if (!playing() || now - nextInputAt < 0) return;
+            nextInputAt = now + (long) ((0.5 + random.nextDouble()) * 1e9 / inputHz);
+            int d = random.nextInt(2) - 1;
+            dir = d >= dir ? d + 1 : d;  // either of the two directions other than dir
+            seq = (seq + 1) & 0xFFFF;
+            if (tracksAcks) {
+                sentSeq[seq & 63] = seq;
+                sentAt[seq & 63] = now;
+            }
+            sendMove(dir, seq);
+            inputsSent.incrementAndGet();
+        }
+
+        synchronized void closed() {
+            if (seated) up.decrementAndGet();
+            seated = false;
+            closed.incrementAndGet();
+        }
+    }
+
+    /** A TCP player, driven from the selector thread. */
+    private final class TcpBot extends Bot {
+        private static final int HANDSHAKE = 0, FRAMES = 1;
+
+        private SocketChannel channel;
+        private SelectionKey key;
+        private int phase = HANDSHAKE;
+        private final ByteBuffer in = ByteBuffer.allocate(1024);
+        private final ByteBuffer out = ByteBuffer.allocate(256);
+
+        @Override
+        void open() {
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true);
+                channel.connect(new InetSocketAddress(host, PongServer.TCP_PORT));
+                key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+            } catch (IOException e) {
+                fail(e.getMessage());
+            }
+        }
+
+        @Override
+        void close() {
+            try {
+                if (channel != null) channel.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+
+        void ready(SelectionKey key, long now) {
+            try {
+                if (key.isConnectable()) {
+                    channel.finishConnect();
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+                if (key.isValid() && key.isWritable()) flush();
+                if (key.isValid() && key.isReadable()) read(now);
+            } catch (IOException e) {
+                fail(e.getMessage());
+            }
+        }
+
+        private void read(long now) throws IOException {
+            if (channel.read(in) < 0) {
+                fail("closed by server");
+                return;
+            }
+            in.flip();
+            try {
+                if (phase == HANDSHAKE) handshake();
+                int size;
+                while (phase == FRAMES && (size = WireProtocol.frameSize(in)) >= 0) {
+                    int end = in.position() + size;
+                    in.position(in.position() + 2);
+                    int type = WireProtocol.readType(in);
+                    WireProtocol.checkPayload(type, end - in.position());
+                    if (type == WireProtocol.SEAT) {
+                        slot = WireProtocol.readSeat(in);
+                        in.position(end);
+                        continue;
+                    }
+                    if (type == WireProtocol.STATE) {
+                        WireProtocol.readState(in, state);
+                    } else if (type == WireProtocol.STATE_DELTA) {
+                        WireProtocol.readStateDelta(in, state);
+                    } else {
+                        throw new WireProtocol.ProtocolException("unexpected frame type " + type);
+                    }
+                    in.position(end);
+                    onState(now, size);
+                }
+            } finally {
+                in.compact();
+            }
+        }
+
+        private void handshake() throws IOException {
+            for (int i = in.position(); i < in.limit(); i++) {
+                if (in.get(i) != '\n') continue;
+                byte[] line = new byte[i - in.position()];
+                in.get(line);
+                in.get();
+                if (!"ENTER_SECRET".equals(new String(line, StandardCharsets.US_ASCII))) {
+                    throw new IOException("expected ENTER_SECRET");
+                }
+                out.put((secret + "\n").getBytes(StandardCharsets.UTF_8));
+                flush();
+                phase = FRAMES;
+                return;
+            }
+        }
+
+        @Override
+        void sendMove(int dir, int seq) {
+            WireProtocol.writeMove(out, dir, seq);
+            flush();
+        }
+
+        @Override
+        void sendControl(ControlCommand.Type type) {
+            WireProtocol.writeControl(out, type);
+            flush();
+        }
+
+        private void flush() {
+            out.flip();
+            try {
+                channel.write(out);
+            } catch (IOException e) {
+                fail(e.getMessage());
+            } finally {
+                out.compact();
+            }
+            if (key.isValid()) {
+                key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            }
+        }
+
+        private void fail(String reason) {
+            if (channel == null || !channel.isOpen()) return;
+            System.out.println("TCP session closed: " + reason);
+            close();
+            closed();
+        }
+    }
+
+    /** A WebSocket player; messages arrive on HttpClient threads, inputs come from the main loop. */
+    private final class WsBot extends Bot implements WebSocket.Listener {
+        private final int room;
+        private WebSocket ws;
+        private boolean authed, open;
+        private final StringBuilder text = new StringBuilder();
+        private ByteBuffer binary = ByteBuffer.allocate(WireProtocol.MAX_DELTA_FRAME_SIZE);
+
+        // WebSocket allows one outstanding send; each send waits for the previous one
+        private CompletableFuture<WebSocket> sending;
+
+        WsBot(int index) {
+            this.room = index / 2;
+            this.slot = index % 2 + 1;
+            this.tracksAcks = !json;
+        }
+
+        @Override
+        void open() {
+            WebSocket.Builder builder = http.newWebSocketBuilder();
+            if (!json) builder.subprotocols(WireProtocol.WS_SUBPROTOCOL);
+            builder.buildAsync(URI.create("ws://" + host + ":" + PongServer.WS_PORT + "/"), this)
+                .exceptionally(e -> {
+                    System.out.println("WebSocket session failed to connect: " + e.getMessage());
+                    closed();
+                    return null;
+                });
+        }
+
+        @Override
+        synchronized void close() {
+            if (ws != null && open) ws.abort();
+        }
+
+        @Override
+        public synchronized void onOpen(WebSocket ws) {
+            this.ws = ws;
+            this.open = true;
+            this.sending = CompletableFuture.completedFuture(ws);
+            ws.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+            text.append(data);
+            if (last) {
+                handleText(System.nanoTime(), text.toString());
+                text.setLength(0);
+            }
+            ws.request(1);
+            return null;
+        }
+
+        private synchronized void handleText(long now, String message) {
+            if (!authed) {
+                if (message.equals("ENTER_SECRET")) {
+                    send(secret);
+                } else if (message.equals("OK")) {
+                    authed = true;
+                    send("{\"action\":\"CHOOSE_PLAYER\",\"p\":" + slot + ",\"room\":\"load-ws-" + room + "\"}");
+                } else {
+                    System.out.println("WebSocket session: authentication failed");
+                }
+                return;
+            }
+            if (message.startsWith("{\"type\":\"STATE\"") || message.startsWith("{\"type\":\"DELTA\"")) {
+                state.paddle1Y = jsonInt(message, "p1Y", state.paddle1Y);
+                state.paddle2Y = jsonInt(message, "p2Y", state.paddle2Y);
+                state.winner = jsonInt(message, "winner", state.winner);
+                state.paused = jsonInt(message, "paused", state.paused ? 1 : 0) != 0;
+                state.ready1 = jsonInt(message, "ready1", state.ready1 ? 1 : 0) != 0;
+                state.ready2 = jsonInt(message, "ready2", state.ready2 ? 1 : 0) != 0;
+                onState(now, message.length());
+            }
+        }
+
+        @Override
+        public CompletionStage<?> onBinary(WebSocket ws, ByteBuffer data, boolean last) {
+            if (binary.remaining() < data.remaining()) {
+                binary = ByteBuffer.allocate(binary.position() + data.remaining()).put(binary.flip());
+            }
+            binary.put(data);
+            if (last) {
+                binary.flip();
+                handleBinary(System.nanoTime(), binary);
+                binary.clear();
+            }
+            ws.request(1);
+            return null;
+        }
+
+        private synchronized void handleBinary(long now, ByteBuffer message) {
+            int size = message.remaining();
+            try {
+                int type = WireProtocol.readType(message);
+                if (type == WireProtocol.STATE) {
+                    WireProtocol.checkPayload(type, message.remaining());
+                    WireProtocol.readState(message, state);
+                } else if (type == WireProtocol.STATE_DELTA) {
+                    WireProtocol.checkPayload(type, message.remaining());
+                    WireProtocol.readStateDelta(message, state);
+                } else {
+                    return;
+                }
+            } catch (WireProtocol.ProtocolException e) {
+                System.out.println("WebSocket session: " + e.getMessage());
+                return;
+            }
+            onState(now, size);
+        }
+
+        @Override
+        public synchronized CompletionStage<?> onClose(WebSocket ws, int status, String reason) {
+            open = false;
+            closed();
+            return null;
+        }
+
+        @Override
+        public synchronized void onError(WebSocket ws, Throwable error) {
+            if (open) {
+                open = false;
+                System.out.println("WebSocket session closed: " + error);
+                closed();
+            }
+        }
+
+        @Override
+        void sendMove(int dir, int seq) {
+            if (json) {
+                send("{\"type\":\"MOVE\",\"dir\":" + dir + "}");
+            } else {
+                send(new byte[] { (byte) WireProtocol.MOVE, (byte) dir, (byte) (seq >>> 8), (byte) seq });
+            }
+        }
+
+        @Override
+        void sendControl(ControlCommand.Type type) {
+            if (json) {
+                send("{\"type\":\"CONTROL\",\"action\":\"" + type + "\"}");
+            } else {
+                send(new byte[] { (byte) WireProtocol.CONTROL, (byte) type.ordinal() });
+            }
+        }
+
+        private synchronized void send(String message) {
+            if (open) sending = sending.thenCompose(w -> w.sendText(message, true));
+        }
+
+        private synchronized void send(byte[] message) {
+            if (open) sending = sending.thenCompose(w -> w.sendBinary(ByteBuffer.wrap(message), true));
+        }
+    }
+
+    /** The int (or boolean as 1/0) value of "key" in a flat JSON object, or dflt if absent. */
+    private static int jsonInt(String message, String key, int dflt) {
+        int i = message.indexOf("\"" + key + "\":");
+        if (i < 0) return dflt;
+        i += key.length() + 3;
+        if (message.startsWith("true", i)) return 1;
+        if (message.startsWith("false", i)) return 0;
+        int end = i;
+        while (end < message.length() && (message.charAt(end) == '-' || Character.isDigit(message.charAt(end)))) end++;
+        return Integer.parseInt(message, i, end, 10);
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.java_websocket.WebSocket;
+
+/**
+ * MatchRegistry.java
+ *
+ * Keeps every live Room in this JVM and decides which room a new player joins.
+ *   - TCP clients have no way to name a room, so they are matched into the oldest
+ *     room that still has a free slot (or a fresh room if none has).
+ *   - WebSocket clients may name a room in CHOOSE_PLAYER; without a name they are
+ *     matched the same way as TCP clients, for the slot they asked for.
+ * Rooms are removed as soon as their last player leaves, and the total number of
+ * rooms is capped so a flood of connections cannot exhaust the heap.
+ */
+public class MatchRegistry {
+    private final int maxRooms;
+    private final int tickRate;
+    private final int sendRate;
+    private final Metrics metrics;
+
+    // Each new room gets an independent generator split off this one (guarded by this)
+    private final SplittableRandom seeds;
+
+    // All live rooms, iterated by the tick scheduler without locking
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+
+    // Rooms with at least one free slot, oldest first (guarded by this)
+    private final Set<Room> openRooms = new LinkedHashSet<>();
+
+    private int nextRoomId = 1;
+
+    /**
+     * Rooms are stepped tickRate times a second and send state sendRate times a second
+     * by default. Their match seeds derive from seeds; their timings and traffic are
+     * recorded in metrics.
+     */
+    public MatchRegistry(int maxRooms, int tickRate, int sendRate, SplittableRandom seeds, Metrics metrics) {
+        this.maxRooms = maxRooms;
+        this.tickRate = tickRate;
+        this.sendRate = sendRate;
+        this.seeds = seeds;
+        this.metrics = metrics;
+    }
+
+    /** Live rooms, safe to iterate from the tick scheduler while players join and leave. */
+    public Collection<Room> rooms() {
+        return rooms.values();
+    }
+
+    public int size() {
+        return rooms.size();
+    }
+
+    /**
+     * Seat a TCP client in the first open room (or a new one).
+     * Returns the room, or null if the server is at its room limit.
+     */
+    public synchronized Room joinTcp(TcpConnection handler) {
+        for (Room room : openRooms) {
+            int slot = room.seat(handler);
+            if (slot != 0) {
+                handler.attach(room, slot);
+                updateOpen(room);
+                return room;
+            }
+        }
+        Room room = createRoom(null);
+        if (room == null) return null;
+        handler.attach(room, room.seat(handler));
+        updateOpen(room);
+        return room;
+    }
+
+    /**
+     * Seat a WebSocket in the given slot. If roomId is null, the first open room with
+     * that slot free is used (or a new one). sendRate is how many state messages per
+     * second the client wants (0 = server default). Returns null if the named room's
+     * slot is taken or the server is at its room limit.
+     */
+    public synchronized Room joinWs(WebSocket conn, String roomId, int slot, int sendRate) {
+        Room room;
+        if (roomId == null) {
+            room = null;
+            for (Room r : openRooms) {
+                if (r.isFree(slot)) { room = r; break; }
+            }
+            if (room == null) room = createRoom(null);
+        } else {
+            room = rooms.get(roomId);
+            if (room == null) room = createRoom(roomId);
+        }
+        if (room == null || !room.seat(conn, slot, sendRate)) return null;
+        updateOpen(room);
+        return room;
+    }
+
+    /** Free the slot held by owner; drops the room once nobody is left in it. */
+    public synchronized void leave(Room room, int slot, Object owner) {
+        room.release(slot, owner);
+        if (room.isEmpty()) {
+            rooms.remove(room.getId());
+            openRooms.remove(room);
+            EventLog.log("room.closed", room.getId(), 0, rooms.size() + " rooms open");
+        } else {
+            updateOpen(room);
+        }
+    }
+
+    private Room createRoom(String roomId) {
+        if (rooms.size() >= maxRooms) {
+            EventLog.log("room.limit", "rejecting player, " + maxRooms + " rooms open");
+            return null;
+        }
+        if (roomId == null) {
+            do {
+                roomId = "r" + nextRoomId++;
+            } while (rooms.containsKey(roomId));
+        }
+        Room room = new Room(roomId, tickRate, sendRate, seeds.split(), metrics);
+        rooms.put(roomId, room);
+        openRooms.add(room);
+        EventLog.log("room.created", roomId, 0, rooms.size() + " rooms open");
+        return room;
+    }
+
+    private void updateOpen(Room room) {
+        if (room.hasFreeSlot()) openRooms.add(room);
+        else                    openRooms.remove(room);
+    }
+}
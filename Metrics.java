@@ -0,0 +1,202 @@
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Metrics.java
+ *
+ * Server-wide instrumentation: latency histograms, traffic counters and gauges.
+ * Tick workers, the TCP selector and WebSocket threads update them without locks
+ * (LongAdder counters, lock-free Histograms, one per tick worker for the per-room
+ * timings); gauges are callbacks evaluated only when the metrics are read.
+ * {@link #write} renders everything in the Prometheus text format, which
+ * MetricsServer serves over HTTP.
+ *
+ * Latency histograms are reported as summaries in seconds. Their count and sum
+ * cover the whole run; their quantiles and max cover roughly the last minute, so a
+ * scrape shows recent behaviour rather than an all-time average. Histograms are
+ * never reset: once {@link #start} is called, a background thread snapshots them
+ * every WINDOW_STEP_SECONDS and a read reports what was recorded since the oldest
+ * snapshot kept, so any number of readers see the same values. Without start (or
+ * after {@link #close}) the windows stop moving.
+ */
+public final class Metrics implements AutoCloseable {
+    /** One Room.tick: inputs, simulation step and broadcast (ns). */
+    public final PerThreadHistogram roomTick = new PerThreadHistogram();
+    /** One PongSimulation.step of a room in play (ns). */
+    public final PerThreadHistogram simStep = new PerThreadHistogram();
+    /** One broadcastStateToAll that sent anything (ns). */
+    public final PerThreadHistogram broadcast = new PerThreadHistogram();
+
+    // State messages and bytes queued for clients, by protocol
+    public final LongAdder tcpMessagesSent = new LongAdder();
+    public final LongAdder tcpBytesSent    = new LongAdder();
+    public final LongAdder wsMessagesSent  = new LongAdder();
+    public final LongAdder wsBytesSent     = new LongAdder();
+
+    // Client messages and bytes received, by protocol
+    public final LongAdder tcpMessagesReceived = new LongAdder();
+    public final LongAdder tcpBytesReceived    = new LongAdder();
+    public final LongAdder wsMessagesReceived  = new LongAdder();
+    public final LongAdder wsBytesReceived     = new LongAdder();
+
+    // State sends skipped because a client's queue was full, and clients disconnected for it
+    public final LongAdder tcpFramesSkipped  = new LongAdder();
+    public final LongAdder wsFramesSkipped   = new LongAdder();
+    public final LongAdder tcpClientsEvicted = new LongAdder();
+    public final LongAdder wsClientsEvicted  = new LongAdder();
+
+    /** MOVE inputs dropped because a player flooded their InputQueue. */
+    public final LongAdder inputsDropped = new LongAdder();
+
+    // Summary quantiles cover the values recorded since the oldest of WINDOW_STEPS
+    // snapshots taken WINDOW_STEP_SECONDS apart: the last 50 to 60 seconds
+    private static final int WINDOW_STEPS = 6;
+    private static final int WINDOW_STEP_SECONDS = 10;
+
+    private final List<Metric> metrics = new CopyOnWriteArrayList<>();
+
+    // Steps the summary windows between start() and close()
+    private ScheduledExecutorService window;
+
+    public Metrics() {
+        histogram("pong_room_tick_seconds", "Time to tick one room (inputs, step, broadcast)", roomTick::snapshot);
+        histogram("pong_sim_step_seconds", "Time for one simulation step of one room", simStep::snapshot);
+        histogram("pong_broadcast_seconds", "Time to send one room's state to its clients", broadcast::snapshot);
+        counter("pong_messages_sent_total{protocol=\"tcp\"}", "State messages queued for clients", tcpMessagesSent::sum);
+        counter("pong_messages_sent_total{protocol=\"ws\"}", null, wsMessagesSent::sum);
+        counter("pong_bytes_sent_total{protocol=\"tcp\"}", "State bytes queued for clients, with framing", tcpBytesSent::sum);
+        counter("pong_bytes_sent_total{protocol=\"ws\"}", null, wsBytesSent::sum);
+        counter("pong_messages_received_total{protocol=\"tcp\"}", "Messages received from clients", tcpMessagesReceived::sum);
+        counter("pong_messages_received_total{protocol=\"ws\"}", null, wsMessagesReceived::sum);
+        counter("pong_bytes_received_total{protocol=\"tcp\"}", "Bytes received from clients", tcpBytesReceived::sum);
+        counter("pong_bytes_received_total{protocol=\"ws\"}", null, wsBytesReceived::sum);
+        counter("pong_frames_skipped_total{protocol=\"tcp\"}", "State sends skipped for clients with a full queue", tcpFramesSkipped::sum);
+        counter("pong_frames_skipped_total{protocol=\"ws\"}", null, wsFramesSkipped::sum);
+        counter("pong_clients_evicted_total{protocol=\"tcp\"}", "Clients disconnected for staying too slow", tcpClientsEvicted::sum);
+        counter("pong_clients_evicted_total{protocol=\"ws\"}", null, wsClientsEvicted::sum);
+        counter("pong_inputs_dropped_total", "MOVE inputs dropped from flooded input queues", inputsDropped::sum);
+    }
+
+    /** Start the thread that moves the summaries' windows along. Does nothing if already started. */
+    public synchronized void start() {
+        if (window != null) return;
+        window = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-window");
+            t.setDaemon(true);
+            return t;
+        });
+        window.scheduleAtFixedRate(this::stepWindows, WINDOW_STEP_SECONDS, WINDOW_STEP_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /** Stop the window thread. The metrics can still be recorded and read. */
+    @Override
+    public synchronized void close() {
+        if (window == null) return;
+        window.shutdownNow();
+        window = null;
+    }
+
+    // ─── Registration ─────────────────────────────────────────────────────────────
+    // A name may carry Prometheus labels; series of one metric must be registered
+    // one after the other, and only the first needs the help text.
+
+    /** A value that only goes up. */
+    public void counter(String name, String help, LongSupplier value) {
+        metrics.add(new Metric(name, help, "counter", value, null, 1));
+    }
+
+    /** A value that goes up and down, read when the metrics are. */
+    public void gauge(String name, String help, LongSupplier value) {
+        metrics.add(new Metric(name, help, "gauge", value, null, 1));
+    }
+
+    /**
+     * A histogram of nanosecond durations, reported as a summary in seconds. snapshot
+     * returns the histogram's current counts, e.g. Histogram::snapshot.
+     */
+    public void histogram(String name, String help, Supplier<Histogram.Snapshot> snapshot) {
+        metrics.add(new Metric(name, help, "summary", null, snapshot, 1e-9));
+    }
+
+    private void stepWindows() {
+        for (Metric m : metrics) {
+            if (m.histogram != null) m.step();
+        }
+    }
+
+    // ─── Exposition ───────────────────────────────────────────────────────────────
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    /** Append every metric in the Prometheus text format (version 0.0.4). */
+    public void write(StringBuilder out) {
+        String family = null;
+        for (Metric m : metrics) {
+            String base = m.base();
+            if (!base.equals(family)) {
+                family = base;
+                if (m.help != null) out.append("# HELP ").append(base).append(' ').append(m.help).append('\n');
+                out.append("# TYPE ").append(base).append(' ').append(m.type).append('\n');
+            }
+            if (m.histogram == null) {
+                out.append(m.name).append(' ').append(m.value.getAsLong()).append('\n');
+            } else {
+                m.writeSummary(out);
+            }
+        }
+    }
+
+    private static final class Metric {
+        final String name, help, type;
+        final LongSupplier value;
+        final Supplier<Histogram.Snapshot> histogram;
+        final double scale;
+
+        // Summaries: snapshots taken WINDOW_STEP_SECONDS apart, oldest first
+        private final ArrayDeque<Histogram.Snapshot> window = new ArrayDeque<>();
+
+        Metric(String name, String help, String type, LongSupplier value,
+               Supplier<Histogram.Snapshot> histogram, double scale) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.value = value;
+            this.histogram = histogram;
+            this.scale = scale;
+            if (histogram != null) window.add(histogram.get());
+        }
+
+        String base() {
+            int brace = name.indexOf('{');
+            return brace < 0 ? name : name.substring(0, brace);
+        }
+
+        synchronized void step() {
+            window.addLast(histogram.get());
+            if (window.size() > WINDOW_STEPS) window.removeFirst();
+        }
+
+        void writeSummary(StringBuilder out) {
+            Histogram.Snapshot all = histogram.get();
+            Histogram.Snapshot recent;
+            synchronized (this) {
+                recent = all.since(window.peekFirst());
+            }
+            for (double q : QUANTILES) {
+                out.append(name).append("{quantile=\"").append(q).append("\"} ")
+                   .append(recent.percentile(q * 100) * scale).append('\n');
+            }
+            out.append(name).append("_sum ").append(all.sum() * scale).append('\n');
+            out.append(name).append("_count ").append(all.count()).append('\n');
+            out.append("# TYPE ").append(name).append("_max gauge\n");
+            out.append(name).append("_max ").append(recent.max() * scale).append('\n');
+        }
+    }
+}
@@ -0,0 +1,34 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * PerThreadHistogram.java
+ *
+ * A Histogram for values recorded by several threads at a high rate, such as one
+ * room tick per room per tick on every tick worker. Each recording thread gets a
+ * Histogram of its own, so recording never contends for a cache line with another
+ * thread; readers merge them into one Histogram.Snapshot. Meant for a small, fixed
+ * set of threads (the tick workers): a thread's histogram outlives the thread.
+ */
+public final class PerThreadHistogram {
+    private final List<Histogram> shards = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Histogram> local = ThreadLocal.withInitial(this::newShard);
+
+    /** Record one value in the calling thread's histogram. */
+    public void record(long value) {
+        local.get().record(value);
+    }
+
+    /** Every thread's values, merged. */
+    public Histogram.Snapshot snapshot() {
+        Histogram.Snapshot s = new Histogram.Snapshot();
+        for (Histogram h : shards) h.addTo(s);
+        return s;
+    }
+
+    private Histogram newShard() {
+        Histogram h = new Histogram();
+        shards.add(h);
+        return h;
+    }
+}
@@ -3,11 +3,63 @@ import java.io.Serializable;
 /**
  * Sent from client to server to indicate paddle movement.
  * direction: -1 = up, 1 = down, 0 = no movement.
+ * seq: client-assigned input number (1..65535, wrapping; 0 = unnumbered), echoed back
+ *      in GameState.ack1/ack2 so the client can reconcile its predicted paddle.
+ *
+ * Commands are immutable. The three unnumbered ones are shared ({@link #of}), and hot
+ * paths do not use objects at all: they pass a command as an int {@link #code}, which
+ * is what the server queues, decodes and simulates with.
  */
-public class PlayerCommand implements Serializable {
+public final class PlayerCommand implements Serializable {
     private static final long serialVersionUID = 1L;
-    public int direction;
-    public PlayerCommand(int dir) {
-        this.direction = dir;
+
+    public static final PlayerCommand UP   = new PlayerCommand(-1, 0);
+    public static final PlayerCommand STOP = new PlayerCommand(0, 0);
+    public static final PlayerCommand DOWN = new PlayerCommand(1, 0);
+
+    public final int direction;
+    public final int seq;
+
+    public PlayerCommand(int dir, int seq) {
+        this.direction = Integer.signum(dir);
+        this.seq = seq & 0xFFFF;
+    }
+
+    /** The shared unnumbered command for dir (any sign). */
+    public static PlayerCommand of(int dir) {
+        return dir < 0 ? UP : dir > 0 ? DOWN : STOP;
+    }
+
+    /** The command for dir and seq: shared if unnumbered, a new object otherwise. */
+    public static PlayerCommand of(int dir, int seq) {
+        return (seq & 0xFFFF) == 0 ? of(dir) : new PlayerCommand(dir, seq);
+    }
+
+    /** Deserialized unnumbered commands are the shared instances too. */
+    private Object readResolve() {
+        return of(direction, seq);
+    }
+
+    // ─── Primitive codes ──────────────────────────────────────────────────────────
+
+    /** This command as an int code. */
+    public int code() {
+        return code(direction, seq);
+    }
+
+    /**
+     * A command as a non-negative int: any direction is reduced to −1/0/1, seq to
+     * 16 bits. Code 1 is {@link #STOP}.
+     */
+    public static int code(int direction, int seq) {
+        return (seq & 0xFFFF) << 2 | (Integer.signum(direction) + 1);
+    }
+
+    public static int direction(int code) {
+        return (code & 3) - 1;
+    }
+
+    public static int seq(int code) {
+        return code >>> 2;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,285 @@
+import java.lang.reflect.Constructor;
+import java.util.SplittableRandom;
+
+/**
+ * PongBatch.java
+ *
+ * Batched form of PongSimulation for hosting very many matches per core. Instead of
+ * one object graph per match, the fields of all matches live in parallel primitive
+ * arrays (structure of arrays) indexed by match, and {@link #step()} advances every
+ * match in one pass over them. The per-tick work is straight-line arithmetic over
+ * contiguous ints, which the JIT can unroll and vectorize; no match costs a pointer
+ * chase or a cache miss on another match's object.
+ *
+ * The rules are PongSimulation's own code: given the same tick rate, seed and inputs,
+ * a match here produces the same GameState as a PongSimulation tick for tick. Each
+ * tick is split into
+ *   - a fast path, taken by nearly every match on nearly every tick: move both paddles,
+ *     advance the ball by its velocity, and check it is well clear of walls and paddles;
+ *   - a slow path for the few matches whose ball may touch something this tick. The
+ *     match is loaded into a scratch PongSimulation, which runs its swept collision
+ *     (bounces, scoring, serves) or speed-up, and is stored back.
+ * Match starts and serves go through the scratch simulation the same way.
+ *
+ * Where the JDK has the Vector API (jdk.incubator.vector), the fast path runs with one
+ * match per SIMD lane instead; see {@link Kernel}. The results are identical.
+ *
+ * The server does not use this class: each Room still owns a PongSimulation, whose
+ * step is interleaved with the room's input queues, pause flag and broadcasts. A
+ * batch tracks no input acks and has no paused state (inputs are bare directions; a
+ * match whose winner is decided stops advancing), so hosting rooms on it would need
+ * both, plus a tick split into input, batch step and broadcast phases. Until then it
+ * is measured by PongBatchBenchmark only.
+ *
+ * Matches are packed in [0, size()). Not thread-safe.
+ */
+public final class PongBatch {
+    private final int tickRate;
+    private final int capacity;
+    private int size;
+    private final Kernel kernel;  // null: scalar loop
+
+    // Per-match state, all indexed by match. Positions are in sub-pixels; ballDX/ballDY are
+    // in pixels per 1/REFERENCE_HZ s as in GameState, vx/vy the same speeds per tick.
+    final int[] ballX, ballY;
+    final int[] ballDX, ballDY;
+    final int[] vx, vy;
+    final int[] paddle1, paddle2;
+    final int[] score1, score2, winner;
+    final int[] input1, input2;
+    final long[] seed;
+    final SplittableRandom[] rng;  // touched only on serves and paddle bounces
+
+    // Runs PongSimulation's rules for one match at a time, see load/store
+    private final PongSimulation rules;
+
+    public PongBatch(int capacity, int tickRate) {
+        this(capacity, tickRate, true);
+    }
+
+    /**
+     * @param vectorize step with the Vector API kernel if this JVM can load it; false
+     *                  always uses the scalar loop
+     */
+    public PongBatch(int capacity, int tickRate, boolean vectorize) {
+        this.capacity = capacity;
+        this.tickRate = tickRate;
+        this.kernel = vectorize && VECTOR_KERNEL != null ? newKernel() : null;
+        ballX   = new int[capacity];
+        ballY   = new int[capacity];
+        ballDX  = new int[capacity];
+        ballDY  = new int[capacity];
+        vx      = new int[capacity];
+        vy      = new int[capacity];
+        paddle1 = new int[capacity];
+        paddle2 = new int[capacity];
+        score1  = new int[capacity];
+        score2  = new int[capacity];
+        winner  = new int[capacity];
+        input1  = new int[capacity];
+        input2  = new int[capacity];
+        seed    = new long[capacity];
+        rng     = new SplittableRandom[capacity];
+        rules   = new PongSimulation(tickRate, 0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    /** Whether step() runs the Vector API kernel. */
+    public boolean isVectorized() {
+        return kernel != null;
+    }
+
+    // ─── Matches ──────────────────────────────────────────────────────────────────
+
+    /**
+     * Add a match and serve its first ball, as a Room does with a new PongSimulation.
+     * Returns its index.
+     */
+    public int add(long matchSeed) {
+        if (size == capacity) throw new IllegalStateException("batch full (" + capacity + " matches)");
+        int i = size++;
+        newMatch(i, matchSeed);
+        return i;
+    }
+
+    /** Restart match i with a new seed: PongSimulation.newMatch followed by serve(2). */
+    public void newMatch(int i, long matchSeed) {
+        rules.newMatch(matchSeed);
+        rules.serve(2);
+        store(i);
+        input1[i] = 0;
+        input2[i] = 0;
+    }
+
+    /**
+     * Set both players' paddle directions for the coming ticks. As with PlayerCommand,
+     * any direction is reduced to −1 (up), 0 or 1 (down), so every stepping path moves
+     * the paddle by the same one step per tick.
+     */
+    public void setInput(int i, int dir1, int dir2) {
+        input1[i] = Integer.signum(dir1);
+        input2[i] = Integer.signum(dir2);
+    }
+
+    /** Write match i as pixels into out (physics fields only, as PongSimulation.state()). */
+    public void copyTo(int i, GameState out) {
+        out.ballX    = Math.floorDiv(ballX[i], PongSimulation.SUBPIXEL);
+        out.ballY    = Math.floorDiv(ballY[i], PongSimulation.SUBPIXEL);
+        out.ballDX   = ballDX[i];
+        out.ballDY   = ballDY[i];
+        out.paddle1Y = paddle1[i] / PongSimulation.SUBPIXEL;
+        out.paddle2Y = paddle2[i] / PongSimulation.SUBPIXEL;
+        out.score1   = score1[i];
+        out.score2   = score2[i];
+        out.winner   = winner[i];
+    }
+
+    // ─── Stepping ─────────────────────────────────────────────────────────────────
+
+    /** Advance every unfinished match by one tick. */
+    public void step() {
+        int paddleStep = perTick(PongSimulation.PADDLE_SPEED);
+        if (kernel != null) {
+            kernel.step(this, paddleStep);
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            if (winner[i] == 0) stepMatch(i, paddleStep);
+        }
+    }
+
+    /** One tick of match i in plain scalar code. */
+    void stepMatch(int i, int paddleStep) {
+        paddle1[i] = PongSimulation.movePaddle(paddle1[i], input1[i], paddleStep);
+        paddle2[i] = PongSimulation.movePaddle(paddle2[i], input2[i], paddleStep);
+
+        // Fast path: the ball's whole step stays clear of every wall and paddle face
+        int nx = ballX[i] + vx[i];
+        int ny = ballY[i] + vy[i];
+        int mx = clearance(vx[i]);
+        int my = clearance(vy[i]);
+        if (nx - mx >= PongSimulation.LEFT_FACE_X && nx + mx <= PongSimulation.RIGHT_FACE_X
+                && ny - my >= 0 && ny + my <= PongSimulation.BALL_MAX_Y) {
+            ballX[i] = nx;
+            ballY[i] = ny;
+        } else {
+            sweep(i);
+        }
+        checkDifficulty(i);
+    }
+
+    /**
+     * Margin (sub-pixels) by which an end position must clear a surface for PongSimulation's
+     * sweep to find no contact this tick. The sweep compares truncated fixed-point times,
+     * so an end position a hair short of a surface can still register; staying this far
+     * away rules that out for any speed, and anything closer takes the exact slow path.
+     */
+    static int clearance(int v) {
+        return (Math.abs(v) >>> 15) + 2;
+    }
+
+    private int perTick(int speed) {
+        return PongSimulation.perTick(speed, tickRate);
+    }
+
+    // ─── Vector kernel ────────────────────────────────────────────────────────────
+
+    /**
+     * Replacement for the scalar loop in step(): advances every unfinished match,
+     * calling back into stepMatch/sweep/checkDifficulty for anything it does not do
+     * itself, with exactly the same results. Each batch has its own instance, so a
+     * kernel may keep scratch arrays between steps.
+     */
+    interface Kernel {
+        void step(PongBatch batch, int paddleStep);
+    }
+
+    // The Vector API kernel is kept in vector/ because it only compiles and runs with
+    // --add-modules jdk.incubator.vector. If it was not compiled, or the module is not
+    // present at run time, loading it fails and every batch uses the scalar loop.
+    private static final Constructor<? extends Kernel> VECTOR_KERNEL = loadKernel("PongBatchVector");
+
+    /** Whether batches created with vectorize set can use the Vector API kernel on this JVM. */
+    public static boolean vectorAvailable() {
+        return VECTOR_KERNEL != null;
+    }
+
+    private static Constructor<? extends Kernel> loadKernel(String className) {
+        try {
+            Constructor<? extends Kernel> c = Class.forName(className).asSubclass(Kernel.class).getDeclaredConstructor();
+            c.newInstance();  // links the incubator module's classes now, not in a constructor
+            return c;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static Kernel newKernel() {
+        try {
+            return VECTOR_KERNEL.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("vector kernel", e);
+        }
+    }
+
+    // ─── Slow path (PongSimulation's rules for one match) ─────────────────────────
+
+    /** PongSimulation.moveBall for match i. */
+    void sweep(int i) {
+        load(i).moveBall();
+        store(i);
+    }
+
+    /** End of PongSimulation.step: speed the ball up while the total score is a multiple of 10. */
+    void checkDifficulty(int i) {
+        if (!PongSimulation.speedsUp(score1[i], score2[i])) return;
+        load(i).increaseDifficulty();
+        store(i);
+    }
+
+    /** Put match i into the scratch simulation, as if it had played every tick itself. */
+    private PongSimulation load(int i) {
+        PongSimulation s = rules;
+        s.ballXs    = ballX[i];
+        s.ballYs    = ballY[i];
+        s.paddle1Ys = paddle1[i];
+        s.paddle2Ys = paddle2[i];
+        s.state.ballDX = ballDX[i];
+        s.state.ballDY = ballDY[i];
+        s.state.score1 = score1[i];
+        s.state.score2 = score2[i];
+        s.state.winner = winner[i];
+        s.seed = seed[i];
+        s.rng  = rng[i];
+        return s;
+    }
+
+    /** Copy the scratch simulation back into match i. */
+    private void store(int i) {
+        PongSimulation s = rules;
+        ballX[i]   = s.ballXs;
+        ballY[i]   = s.ballYs;
+        paddle1[i] = s.paddle1Ys;
+        paddle2[i] = s.paddle2Ys;
+        ballDX[i]  = s.state.ballDX;
+        ballDY[i]  = s.state.ballDY;
+        vx[i]      = perTick(ballDX[i]);
+        vy[i]      = perTick(ballDY[i]);
+        score1[i]  = s.state.score1;
+        score2[i]  = s.state.score2;
+        winner[i]  = s.state.winner;
+        seed[i]    = s.seed;
+        rng[i]     = s.rng;
+    }
+}
@@ -1,5 +1,8 @@
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
@@ -10,34 +13,59 @@ import java.awt.event.*;
  * - Connects over TCP to PongServer (port 12345).
  * - Waits for the server to send "ENTER_SECRET\n".
  * - Prompts the user for the shared secret (via a Swing JOptionPane).
- * - If correct, switches to Object streams and begins receiving GameState updates.
+ * - If correct, the server seats it and says in which slot (a SEAT frame); then it receives
+ *   GameState updates as binary WireProtocol frames.
  * - Renders a 16:9‐scaled Pong board in a Swing JPanel (800×600 logic scaled to window).
  * - Sends PlayerCommand (−1,0,1) on W/S or Up/Down keys, and ControlCommand for READY / PAUSE / RESTART.
+ * - Predicts its own paddle locally: every MOVE carries a sequence number, the server echoes
+ *   the one it is applying (and how far it has moved the paddle), and the client redraws its paddle as the
+ *   server's position plus whatever input the server has not applied yet.
+ * - Draws the ball and the opponent's paddle RENDER_DELAY_MS in the past, interpolated between
+ *   the two buffered server frames around that instant, so motion stays smooth at the display
+ *   rate however often (and however unevenly) frames arrive. Only the Swing timer repaints.
  */
 public class PongClient extends JPanel implements KeyListener {
-    // The server’s logical game size (must match PongServer)
+    // The server’s logical game size (must match PongSimulation)
     private static final int GAME_WIDTH  = 800;
     private static final int GAME_HEIGHT = 600;
     private static final int PADDLE_WIDTH  = 10;
     private static final int PADDLE_HEIGHT = 80;
     private static final int BALL_SIZE     = 15;
+    // Paddle speed in pixels per second (PongSimulation.PADDLE_SPEED per 1/REFERENCE_HZ s)
+    private static final double PADDLE_SPEED = 5 * 60;
 
-    // Socket & streams for the initial text handshake (ENTER_SECRET)
+    // Unacknowledged inputs kept for replay; older ones are dropped
+    private static final int MAX_PENDING = 128;
+
+    // How far behind the newest server frame the ball and opponent are drawn. Must cover
+    // at least two broadcast intervals (and some jitter) so there is a frame on each side.
+    private static final long RENDER_DELAY_MS = 100;
+
+    // Socket & streams, used for the ENTER_SECRET text line and then for WireProtocol frames
     private Socket socket;
-    private BufferedReader textIn;
-    private BufferedWriter textOut;
+    private DataInputStream in;
+    private OutputStream out;
 
-    // Once authenticated, we wrap the same socket streams in object streams:
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
+    // Reused for every outgoing MOVE / CONTROL frame (guarded by itself)
+    private final ByteBuffer sendBuf = ByteBuffer.allocate(16);
 
     // Current GameState (updated whenever server sends a new object)
     private volatile GameState state = new GameState();
 
+    // Recent server frames for interpolation, and the interpolated frame being drawn (Swing thread)
+    private final SnapshotBuffer snapshots = new SnapshotBuffer();
+    private final GameState view = new GameState();
+
     // Last paddle movement command (direction = -1, 0, or 1)
-    private PlayerCommand lastCmd = new PlayerCommand(0);
+    private PlayerCommand lastCmd = PlayerCommand.STOP;
+
+    // ─── Prediction state (Swing thread only) ───
+    // Inputs sent but not yet fully reflected in the server's paddle position, oldest first
+    private final ArrayDeque<PendingInput> pending = new ArrayDeque<>();
+    private int nextSeq = 1;
+    private long lastAdvanceNanos = System.nanoTime();
 
-    // This client’s slot: 1 or 2 (used for coloring win/lose and sending MOVE to correct server slot)
+    // This client’s slot, 1 or 2, as the server assigned it (which paddle we predict, win/lose)
     private int playerNumber;
 
     // When a winner arrives, we store “You Win!” or “You Lose”
@@ -69,26 +97,11 @@ public class PongClient extends JPanel implements KeyListener {
             port = 12345;
         }
 
-        // Create the client and perform the ENTER_SECRET handshake immediately
+        // Create the client and perform the ENTER_SECRET handshake immediately; the server picks our slot
         PongClient client = new PongClient(host, port);
 
-        // Prompt until the user enters 1 or 2
-        int pNum;
-        while (true) {
-            String pNumStr = JOptionPane.showInputDialog(
-                "Enter player number (1 or 2):",
-                "1"
-            );
-            try {
-                pNum = Integer.parseInt(pNumStr);
-                if (pNum == 1 || pNum == 2) break;
-            } catch (NumberFormatException ignored) { }
-            JOptionPane.showMessageDialog(null, "Invalid player number. Please enter 1 or 2.");
-        }
-        client.setPlayerNumber(pNum);
-
         // Build the GUI (scaled 16:9 window)
-        JFrame frame = new JFrame("Networked Pong – Player " + pNum);
+        JFrame frame = new JFrame("Networked Pong – Player " + client.getPlayerNumber());
         frame.setSize(1600, 960); // 16:9 aspect
         frame.setLayout(new BorderLayout());
         frame.add(client, BorderLayout.CENTER);
@@ -105,7 +118,7 @@ public class PongClient extends JPanel implements KeyListener {
 
         // “READY” → send ControlCommand.READY, disable button
         readyButton.addActionListener(e -> {
-            client.sendControl(new ControlCommand(ControlCommand.Type.READY));
+            client.sendControl(ControlCommand.READY);
             readyButton.setEnabled(false);
             client.requestFocusInWindow();
             client.gameOverMessage = null;
@@ -114,10 +127,10 @@ public class PongClient extends JPanel implements KeyListener {
         // “PAUSE” toggles between PAUSE and RESUME
         pauseButton.addActionListener(e -> {
             if (!client.getState().paused && client.getState().winner == 0) {
-                client.sendControl(new ControlCommand(ControlCommand.Type.PAUSE));
+                client.sendControl(ControlCommand.PAUSE);
                 pauseButton.setText("RESUME");
             } else if (client.getState().winner == 0) {
-                client.sendControl(new ControlCommand(ControlCommand.Type.RESUME));
+                client.sendControl(ControlCommand.RESUME);
                 pauseButton.setText("PAUSE");
             }
             client.requestFocusInWindow();
@@ -125,7 +138,7 @@ public class PongClient extends JPanel implements KeyListener {
 
         // “RESTART” → send ControlCommand.RESTART, re‐enable READY
         restartButton.addActionListener(e -> {
-            client.sendControl(new ControlCommand(ControlCommand.Type.RESTART));
+            client.sendControl(ControlCommand.RESTART);
             readyButton.setEnabled(true);
             pauseButton.setText("PAUSE");
             client.requestFocusInWindow();
@@ -148,30 +161,30 @@ public class PongClient extends JPanel implements KeyListener {
         client.start();
     }
 
-    // ─── Constructor: connect → handshake → switch to object streams ────────────
+    // ─── Constructor: connect → handshake → switch to binary frames ─────────────
     public PongClient(String host, int port) {
         try {
             // 1) Open a TCP socket to (host, port)
             socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
 
-            // 2) Wrap in text streams for the “ENTER_SECRET” prompt
-            textIn  = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            textOut = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            // 2) One buffered input stream serves both the text prompt and the frames after it
+            in  = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = socket.getOutputStream();
 
             // 3) Server must send “ENTER_SECRET\n”
-            String prompt = textIn.readLine();
+            String prompt = readLine(in);
             if (!"ENTER_SECRET".equals(prompt)) {
                 throw new IOException("Expected ENTER_SECRET but got: " + prompt);
             }
             // 4) Ask user for the shared secret
             String secret = JOptionPane.showInputDialog("Enter shared secret:", "");
             if (secret == null) System.exit(0);
-            textOut.write(secret + "\n");
-            textOut.flush();
+            out.write((secret + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
 
-            // 5) Now wrap again in object streams
-            out = new ObjectOutputStream(socket.getOutputStream());
-            in  = new ObjectInputStream(socket.getInputStream());
+            // 5) The server seats us and names the slot before sending any state
+            playerNumber = readSeat(in);
         } catch (IOException e) {
             e.printStackTrace();
             JOptionPane.showMessageDialog(null, "Unable to connect or authenticate: " + e.getMessage());
@@ -183,29 +196,76 @@ public class PongClient extends JPanel implements KeyListener {
         setFocusable(true);
         addKeyListener(this);
 
-        // 6) Start a thread that constantly reads GameState from 'in'
+        // 6) Start a thread that constantly reads STATE / STATE_DELTA frames from 'in'
         new Thread(() -> {
+            byte[] frame = new byte[256];
+            ByteBuffer buf = ByteBuffer.wrap(frame);
             try {
                 while (true) {
-                    Object obj = in.readObject();
-                    if (obj instanceof GameState) {
-                        state = (GameState) obj;
+                    int len = in.readUnsignedShort();
+                    if (len > frame.length) throw new IOException("Frame too large: " + len);
+                    in.readFully(frame, 0, len);
+                    buf.clear().limit(len);
+                    int type = WireProtocol.readType(buf);
+                    if (type == WireProtocol.STATE || type == WireProtocol.STATE_DELTA) {
+                        WireProtocol.checkPayload(type, buf.remaining());
+                        // Build the next state off to the side so paint() never sees a half-applied delta
+                        GameState gs = new GameState();
+                        if (type == WireProtocol.STATE) {
+                            WireProtocol.readState(buf, gs);
+                        } else {
+                            gs.copyFrom(state);
+                            WireProtocol.readStateDelta(buf, gs);
+                        }
+                        state = gs;
+                        snapshots.add(gs, System.nanoTime());
                         // Once a winner is set, capture “You Win!” / “You Lose”
                         if (state.winner != 0 && gameOverMessage == null) {
                             gameOverMessage =
                               (state.winner == playerNumber) ? "You Win!" : "You Lose";
                         }
-                        repaint();
                     }
                 }
-            } catch (IOException | ClassNotFoundException e) {
+            } catch (IOException e) {
                 JOptionPane.showMessageDialog(this, "Connection lost: " + e.getMessage());
                 System.exit(0);
             }
         }).start();
 
-        // 7) Swing timer to repaint at ~60 FPS
-        new Timer(1000 / 60, e -> repaint()).start();
+        // 7) Swing timer: advance the predicted paddle and repaint at ~60 FPS
+        new Timer(1000 / 60, e -> {
+            advancePrediction();
+            repaint();
+        }).start();
+    }
+
+    /** Read one "\n"-terminated ASCII line without buffering past it. */
+    private static String readLine(DataInputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (c != '\r') sb.append((char) c);
+        }
+        if (c == -1 && sb.length() == 0) return null;
+        return sb.toString();
+    }
+
+    /** Read the SEAT frame that follows a correct secret. */
+    private static int readSeat(DataInputStream in) throws IOException {
+        int len;
+        try {
+            len = in.readUnsignedShort();
+        } catch (EOFException e) {
+            throw new IOException("server closed the connection (wrong secret, or no room free)");
+        }
+        if (len > 64) throw new IOException("Frame too large: " + len);
+        byte[] frame = new byte[len];
+        in.readFully(frame);
+        ByteBuffer buf = ByteBuffer.wrap(frame);
+        int type = WireProtocol.readType(buf);
+        if (type != WireProtocol.SEAT) throw new IOException("Expected SEAT but got frame type " + type);
+        WireProtocol.checkPayload(type, buf.remaining());
+        return WireProtocol.readSeat(buf);
     }
 
     /** Called after construction to finalize any setup (none in this version). */
@@ -213,9 +273,9 @@ public class PongClient extends JPanel implements KeyListener {
         // All work is done in constructor threads & paintComponent
     }
 
-    /** Set this client’s slot (1 or 2). */
-    public void setPlayerNumber(int pNum) {
-        this.playerNumber = pNum;
+    /** This client’s slot (1 or 2), as assigned by the server. */
+    public int getPlayerNumber() {
+        return playerNumber;
     }
 
     /** Returns the latest GameState from the server. */
@@ -225,20 +285,154 @@ public class PongClient extends JPanel implements KeyListener {
 
     /** Send a paddle‐movement command (−1 = up, 1 = down, 0 = stop). */
     public void sendMovement(PlayerCommand cmd) {
-        try {
-            out.reset();
-            out.writeObject(cmd);
-            out.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
+        synchronized (sendBuf) {
+            sendBuf.clear();
+            WireProtocol.writeMove(sendBuf, cmd.direction, cmd.seq);
+            flushSendBuf();
         }
     }
 
     /** Send a control command (READY, PAUSE, RESUME, RESTART). */
     public void sendControl(ControlCommand cc) {
+        synchronized (sendBuf) {
+            sendBuf.clear();
+            WireProtocol.writeControl(sendBuf, cc.type);
+            flushSendBuf();
+        }
+    }
+
+    // ─── Prediction & reconciliation ───────────────────────────────────────────
+
+    /** One input as the client applied it: which command, and how far it has moved us so far. */
+    private static final class PendingInput {
+        final int seq;
+        final int direction;
+        double travel;  // pixels, unclamped
+
+        PendingInput(PlayerCommand cmd) {
+            this.seq = cmd.seq;
+            this.direction = cmd.direction;
+        }
+    }
+
+    /** Number, remember and send a new paddle direction. */
+    private void move(int dir) {
+        lastCmd = PlayerCommand.of(dir, nextSeq);
+        nextSeq = nextSeq == 0xFFFF ? 1 : nextSeq + 1;
+        pending.addLast(new PendingInput(lastCmd));
+        if (pending.size() > MAX_PENDING) pending.removeFirst();
+        sendMovement(lastCmd);
+    }
+
+    /**
+     * The input being held has moved the paddle for the time since the last call.
+     * Measured in time rather than frames, so it does not matter how often the server
+     * simulates or how regularly the Swing timer fires.
+     */
+    private void advancePrediction() {
+        long now = System.nanoTime();
+        long elapsed = now - lastAdvanceNanos;
+        lastAdvanceNanos = now;
+        GameState gs = state;
+        if (!gs.ready1 || !gs.ready2 || gs.winner != 0) {
+            // The server resets both commands between matches
+            pending.clear();
+            lastCmd = PlayerCommand.STOP;
+            return;
+        }
+        if (!gs.paused && !pending.isEmpty()) {
+            pending.peekLast().travel += PADDLE_SPEED * elapsed / 1e9;
+        }
+    }
+
+    /**
+     * Our paddle's Y: the authoritative position from gs, then every input the server
+     * has not caught up with replayed on top of it, clamped exactly as PongSimulation does.
+     */
+    private int predictedPaddleY(GameState gs) {
+        int y        = playerNumber == 1 ? gs.paddle1Y  : gs.paddle2Y;
+        int ack      = playerNumber == 1 ? gs.ack1      : gs.ack2;
+        int ackMoved = playerNumber == 1 ? gs.ackMoved1 : gs.ackMoved2;
+        while (!pending.isEmpty() && isBefore(pending.peekFirst().seq, ack)) {
+            pending.removeFirst();
+        }
+        for (PendingInput in : pending) {
+            // The server is partway through the acknowledged input; later ones it has not seen
+            double travel = in.seq == ack ? in.travel - ackMoved : in.travel;
+            if (travel > 0 && in.direction != 0) {
+                y += in.direction * (int) Math.round(travel);
+                y = Math.max(0, Math.min(GAME_HEIGHT - PADDLE_HEIGHT, y));
+            }
+        }
+        return y;
+    }
+
+    // ─── Snapshot interpolation ────────────────────────────────────────────────
+
+    /**
+     * The last CAPACITY server frames with their arrival times. The reader thread adds,
+     * the Swing thread samples; frames are never modified once added.
+     */
+    private static final class SnapshotBuffer {
+        private static final int CAPACITY = 32;
+
+        private final GameState[] states = new GameState[CAPACITY];
+        private final long[] arrivals = new long[CAPACITY];
+        private int head;   // where the next frame goes
+        private int count;
+
+        synchronized void add(GameState gs, long arrivalNanos) {
+            states[head] = gs;
+            arrivals[head] = arrivalNanos;
+            head = (head + 1) % CAPACITY;
+            if (count < CAPACITY) count++;
+        }
+
+        /**
+         * Write into out the state as of renderNanos: the newest frame at or before it,
+         * with ball and paddles moved toward the following frame in proportion to time.
+         * Before the oldest frame the oldest is used; after the newest, the newest (no
+         * extrapolation). Returns false if no frame has arrived yet.
+         */
+        synchronized boolean sample(long renderNanos, GameState out) {
+            if (count == 0) return false;
+            int newer = -1;
+            for (int i = 1; i <= count; i++) {
+                int idx = (head - i + CAPACITY) % CAPACITY;
+                if (arrivals[idx] <= renderNanos) {
+                    out.copyFrom(states[idx]);
+                    if (newer >= 0) interpolate(states[idx], arrivals[idx], states[newer], arrivals[newer], renderNanos, out);
+                    return true;
+                }
+                newer = idx;
+            }
+            out.copyFrom(states[newer]);
+            return true;
+        }
+
+        private static void interpolate(GameState a, long ta, GameState b, long tb, long t, GameState out) {
+            // A point was scored in between: the ball was re-served, so don't sweep it across the court
+            if (a.score1 != b.score1 || a.score2 != b.score2) return;
+            float f = (float) (t - ta) / (tb - ta);
+            out.ballX    = lerp(a.ballX,    b.ballX,    f);
+            out.ballY    = lerp(a.ballY,    b.ballY,    f);
+            out.paddle1Y = lerp(a.paddle1Y, b.paddle1Y, f);
+            out.paddle2Y = lerp(a.paddle2Y, b.paddle2Y, f);
+        }
+
+        private static int lerp(int from, int to, float f) {
+            return from + Math.round((to - from) * f);
+        }
+    }
+
+    /** True if sequence number a was sent before b (u16, wrapping). */
+    private static boolean isBefore(int a, int b) {
+        return ((a - b) & 0xFFFF) >= 0x8000;
+    }
+
+    private void flushSendBuf() {
         try {
-            out.reset();
-            out.writeObject(cc);
+            out.write(sendBuf.array(), 0, sendBuf.position());
             out.flush();
         } catch (IOException e) {
             e.printStackTrace();
@@ -302,10 +496,15 @@ public class PongClient extends JPanel implements KeyListener {
         float xScale = width  / (float) GAME_WIDTH;
         float yScale = height / (float) GAME_HEIGHT;
 
-        // 5) Draw paddles
+        // Ball and opponent come from the interpolated past; overlays above use the newest state
+        long renderNanos = System.nanoTime() - RENDER_DELAY_MS * 1_000_000L;
+        if (!snapshots.sample(renderNanos, view)) view.copyFrom(state);
+
+        // 5) Draw paddles (ours at its predicted position)
         g2.setColor(Color.WHITE);
-        int p1y = Math.round(state.paddle1Y * yScale);
-        int p2y = Math.round(state.paddle2Y * yScale);
+        int ownY = predictedPaddleY(state);
+        int p1y = Math.round((playerNumber == 1 ? ownY : view.paddle1Y) * yScale);
+        int p2y = Math.round((playerNumber == 2 ? ownY : view.paddle2Y) * yScale);
         int pw  = Math.round(PADDLE_WIDTH * xScale);
         int ph  = Math.round(PADDLE_HEIGHT * yScale);
         g2.fillRect(0, p1y, pw, ph);
@@ -313,8 +512,8 @@ public class PongClient extends JPanel implements KeyListener {
 
         // 6) Draw ball (only if not paused)
         if (!state.paused) {
-            int bx = Math.round(state.ballX * xScale);
-            int by = Math.round(state.ballY * yScale);
+            int bx = Math.round(view.ballX * xScale);
+            int by = Math.round(view.ballY * yScale);
             int bs = Math.round(BALL_SIZE * xScale);
             g2.fillOval(bx, by, bs, bs);
         }
@@ -350,9 +549,9 @@ public class PongClient extends JPanel implements KeyListener {
             dir = -1;
         if (e.getKeyCode() == KeyEvent.VK_S || e.getKeyCode() == KeyEvent.VK_DOWN) 
             dir = 1;
-        if (dir != 0) {
-            lastCmd = new PlayerCommand(dir);
-            sendMovement(lastCmd);
+        // Key auto-repeat fires keyPressed again; only a change of direction is a new input
+        if (dir != 0 && dir != lastCmd.direction) {
+            move(dir);
         }
     }
 
@@ -365,9 +564,8 @@ public class PongClient extends JPanel implements KeyListener {
             e.getKeyCode() == KeyEvent.VK_S   ||
             e.getKeyCode() == KeyEvent.VK_UP  ||
             e.getKeyCode() == KeyEvent.VK_DOWN;
-        if (relevant) {
-            lastCmd = new PlayerCommand(0);
-            sendMovement(lastCmd);
+        if (relevant && lastCmd.direction != 0) {
+            move(0);
         }
     }
 
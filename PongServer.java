@@ -1,26 +1,36 @@
-import java.io.*;
-import java.net.*;
-import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
 
 import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.drafts.Draft_6455;
 import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.protocols.Protocol;
 import org.java_websocket.server.WebSocketServer;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-
 /**
  * PongServer.java
  *
- * Allows either two TCP clients (Java) or two WebSocket clients (browser) to play Pong.
- * Each slot (player 1 or player 2) can be taken by a TCP client or a WebSocket client.
- * Waits until both slots are occupied, then waits for both to click READY.
+ * Hosts any number of independent Pong matches (Rooms) in one JVM.
+ * Each slot (player 1 or player 2) of a room can be taken by a TCP client (Java)
+ * or a WebSocket client (browser). MatchRegistry decides which room a player joins;
+ * TickScheduler steps every live room at a fixed rate.
  */
 public class PongServer {
     public static final int TCP_PORT = 12345;
     public static final int WS_PORT  = 8080;
+    public static final int METRICS_PORT;
+    public static final int TICK_RATE;
+    public static final int SEND_RATE;
     private static final String SHARED_SECRET;
+    private static final int MAX_ROOMS;
+    private static final int TICK_WORKERS;
+    private static final SplittableRandom SEEDS;
 
     static {
         String s = System.getenv("PONG_SECRET");
@@ -29,30 +39,37 @@ public class PongServer {
             System.exit(1);
         }
         SHARED_SECRET = s;
-    }
 
-    // Game dimensions
-    private static final int WIDTH         = 800;
-    private static final int HEIGHT        = 600;
-    private static final int PADDLE_WIDTH  = 10;
-    private static final int PADDLE_HEIGHT = 80;
-    private static final int BALL_SIZE     = 15;
-    private static final int TARGET_SCORE  = 5;
+        String max = System.getenv("PONG_MAX_ROOMS");
+        MAX_ROOMS = (max == null || max.isEmpty()) ? 10000 : Integer.parseInt(max);
+
+        // Simulation steps per second, and state messages per second unless a client asks otherwise
+        String tick = System.getenv("PONG_TICK_RATE");
+        TICK_RATE = (tick == null || tick.isEmpty()) ? 60 : Integer.parseInt(tick);
+        String send = System.getenv("PONG_SEND_RATE");
+        SEND_RATE = Math.min(TICK_RATE, (send == null || send.isEmpty()) ? 60 : Integer.parseInt(send));
 
-    // Shared game state
-    private final GameState state = new GameState();
-    private final AtomicReference<PlayerCommand> cmd1 = new AtomicReference<>(new PlayerCommand(0));
-    private final AtomicReference<PlayerCommand> cmd2 = new AtomicReference<>(new PlayerCommand(0));
+        // The tick clock thread also steps rooms, so by default add one worker per remaining core
+        String workers = System.getenv("PONG_TICK_WORKERS");
+        TICK_WORKERS = (workers == null || workers.isEmpty())
+            ? Math.max(0, Runtime.getRuntime().availableProcessors() - 1)
+            : Integer.parseInt(workers);
 
-    // TCP client handlers (null if not used)
-    private ClientHandler player1TCP, player2TCP;
+        // Root of every match seed. Fixed with PONG_SEED to re-run a server session; random otherwise
+        String seed = System.getenv("PONG_SEED");
+        SEEDS = (seed == null || seed.isEmpty()) ? new SplittableRandom() : new SplittableRandom(Long.decode(seed));
 
-    // WebSocket slot flags
-    private volatile boolean player1WS = false;
-    private volatile boolean player2WS = false;
+        // Local HTTP port for /metrics; 0 turns it off
+        String metrics = System.getenv("PONG_METRICS_PORT");
+        METRICS_PORT = (metrics == null || metrics.isEmpty()) ? 9100 : Integer.parseInt(metrics);
+    }
+
+    // Tick times, traffic and session counts for the /metrics endpoint
+    private final Metrics metrics = new Metrics();
 
-    // Set of active WebSocket connections
-    private final Set<WebSocket> wsClients = Collections.synchronizedSet(new HashSet<>());
+    // All live matches, stepped by one shared scheduler
+    private final MatchRegistry registry = new MatchRegistry(MAX_ROOMS, TICK_RATE, SEND_RATE, SEEDS, metrics);
+    private final TickScheduler scheduler = new TickScheduler(registry.rooms(), TICK_RATE, TICK_WORKERS);
 
     public static void main(String[] args) {
         new PongServer().start();
@@ -65,468 +82,180 @@ public class PongServer {
             wsServer.start();
             System.out.println(">> WebSocketServer listening on port " + WS_PORT);
 
-            // 2) Launch TCP server on port 12345
-            try (ServerSocket serverSocket = new ServerSocket(TCP_PORT)) {
-                System.out.println(">> TCP Server listening on port " + TCP_PORT);
-                // Set a short timeout so we can periodically check WS flags
-                serverSocket.setSoTimeout(1000);
-
-                // Wait until slot1 is filled by TCP or WS
-                while (!player1WS && player1TCP == null) {
-                    try {
-                        if (player1TCP == null) {
-                            Socket sock = serverSocket.accept();
-                            // Attempt to authenticate as player 1
-                            ClientHandler handler = authenticateTCP(sock, 1);
-                            if (handler != null) {
-                                player1TCP = handler;
-                                System.out.println("Player 1 will use TCP socket.");
-                            }
-                        }
-                    } catch (SocketTimeoutException ste) {
-                        // Timeout: loop again to check player1WS
-                    }
-                }
-
-                // Wait until slot2 is filled by TCP or WS
-                while (!player2WS && player2TCP == null) {
-                    try {
-                        if (player2TCP == null) {
-                            Socket sock = serverSocket.accept();
-                            ClientHandler handler = authenticateTCP(sock, 2);
-                            if (handler != null) {
-                                player2TCP = handler;
-                                System.out.println("Player 2 will use TCP socket.");
-                            }
-                        }
-                    } catch (SocketTimeoutException ste) {
-                        // Timeout: loop again to check player2WS
-                    }
-                }
-
-                // Start TCP handler threads for any TCP players
-                if (player1TCP != null) new Thread(player1TCP).start();
-                if (player2TCP != null) new Thread(player2TCP).start();
-
-                // Both slots occupied now
-                while (true) {
-                    initGame();
-                    waitForReady();
-                    resetBall(2);
-                    runMatchLoop(wsServer);
-                    System.out.println("Match ended. Winner: Player " + state.winner);
-                    waitForRestart();
-                    System.out.println("Preparing next match...");
-                }
-            }
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * Attempt to authenticate a TCP socket as playerNumber.  If secret matches, return handler; otherwise close.
-     */
-    private ClientHandler authenticateTCP(Socket sock, int playerNumber) {
-        try {
-            BufferedWriter textOut = new BufferedWriter(new OutputStreamWriter(sock.getOutputStream()));
-            BufferedReader textIn  = new BufferedReader(new InputStreamReader(sock.getInputStream()));
-            textOut.write("ENTER_SECRET\n");
-            textOut.flush();
-
-            sock.setSoTimeout(5000);
-            String received = textIn.readLine();
-            if (!SHARED_SECRET.equals(received)) {
-                System.out.println("TCP Player " + playerNumber + " failed auth: " + received);
-                sock.close();
-                return null;
+            // 2) Tick every room from the shared scheduler
+            scheduler.start();
+            System.out.println(">> Tick scheduler running at " + TICK_RATE + " Hz with " + TICK_WORKERS
+                + " workers, sending state at " + SEND_RATE + " Hz by default");
+
+            // 3) Launch non-blocking TCP server on port 12345; each authenticated client joins a room
+            TcpServer tcpServer = new TcpServer(TCP_PORT, SHARED_SECRET, registry, metrics);
+            tcpServer.start();
+            System.out.println(">> TCP Server listening on port " + TCP_PORT);
+
+            // 4) Serve metrics on localhost
+            if (METRICS_PORT > 0) {
+                registerGauges(tcpServer, wsServer);
+                metrics.start();
+                new MetricsServer(METRICS_PORT, metrics).start();
+                System.out.println(">> Metrics at http://127.0.0.1:" + METRICS_PORT + "/metrics");
             }
-            sock.setSoTimeout(0);
-            System.out.println("TCP Player " + playerNumber + " authenticated.");
-            return new ClientHandler(sock, playerNumber);
         } catch (IOException e) {
-            try { sock.close(); } catch (IOException ex) {}
-            return null;
-        }
-    }
-
-    private void initGame() {
-        state.paddle1Y = HEIGHT/2 - PADDLE_HEIGHT/2;
-        state.paddle2Y = HEIGHT/2 - PADDLE_HEIGHT/2;
-        state.score1   = 0;
-        state.score2   = 0;
-        state.ready1   = false;
-        state.ready2   = false;
-        state.paused   = false;
-        state.winner   = 0;
-        cmd1.set(new PlayerCommand(0));
-        cmd2.set(new PlayerCommand(0));
-    }
-
-    private void waitForReady() throws InterruptedException {
-        while (!state.ready1 || !state.ready2) {
-            broadcastStateToAll();
-            Thread.sleep(100);
-        }
-    }
-
-    private void waitForRestart() throws InterruptedException {
-        while (state.ready1 || state.ready2) {
-            Thread.sleep(100);
-        }
-    }
-
-    private void runMatchLoop(PongWebSocketServer wsServer) throws InterruptedException {
-        final int FPS       = 60;
-        final long frameTime = 1000 / FPS;
-        while (state.winner == 0) {
-            long start = System.currentTimeMillis();
-            if (!state.paused) updateGame();
-            broadcastStateToAll();
-            Thread.sleep(Math.max(0, frameTime - (System.currentTimeMillis() - start)));
-        }
-        broadcastStateToAll();
-    }
-
-    private void updateGame() {
-        applyPaddle(cmd1.get(), 1);
-        applyPaddle(cmd2.get(), 2);
-        state.ballX += state.ballDX;
-        state.ballY += state.ballDY;
-        if (state.ballY <= 0 || state.ballY + BALL_SIZE >= HEIGHT) {
-            state.ballDY = -state.ballDY;
-        }
-        if (state.ballX <= PADDLE_WIDTH) {
-            if (state.ballY + BALL_SIZE >= state.paddle1Y && state.ballY <= state.paddle1Y + PADDLE_HEIGHT) {
-                bounceOffPaddle(1);
-            } else {
-                state.score2++;
-                if (state.score2 >= TARGET_SCORE) state.winner = 2;
-                else resetBall(1);
-            }
-        }
-        if (state.ballX + BALL_SIZE >= WIDTH - PADDLE_WIDTH) {
-            if (state.ballY + BALL_SIZE >= state.paddle2Y && state.ballY <= state.paddle2Y + PADDLE_HEIGHT) {
-                bounceOffPaddle(2);
-            } else {
-                state.score1++;
-                if (state.score1 >= TARGET_SCORE) state.winner = 1;
-                else resetBall(2);
-            }
-        }
-        int total = state.score1 + state.score2;
-        if (total > 0 && total % 10 == 0) increaseDifficulty();
-    }
-
-    private void applyPaddle(PlayerCommand cmd, int player) {
-        int speed = 5;
-        if (cmd.direction == -1) {
-            if (player == 1) state.paddle1Y = Math.max(0, state.paddle1Y - speed);
-            else             state.paddle2Y = Math.max(0, state.paddle2Y - speed);
-        } else if (cmd.direction == 1) {
-            if (player == 1) state.paddle1Y = Math.min(HEIGHT - PADDLE_HEIGHT, state.paddle1Y + speed);
-            else             state.paddle2Y = Math.min(HEIGHT - PADDLE_HEIGHT, state.paddle2Y + speed);
-        }
-    }
-
-    private void bounceOffPaddle(int player) {
-        state.ballDX = -state.ballDX;
-        int delta = (int)(Math.random() * 4) - 2;
-        state.ballDY += delta;
-        state.ballDY = Math.max(-8, Math.min(8, state.ballDY));
-    }
-
-    private void resetBall(int dir) {
-        state.ballX = WIDTH/2 - BALL_SIZE/2;
-        state.ballY = (int)(Math.random() * (HEIGHT - BALL_SIZE));
-        int vx = 5;
-        state.ballDX = (dir == 1) ? -vx : vx;
-        state.ballDY = (Math.random() < 0.5) ? 3 : -3;
-    }
-
-    private void increaseDifficulty() {
-        state.ballDX += (state.ballDX > 0 ? 1 : -1);
-        state.ballDY += (state.ballDY > 0 ? 1 : -1);
-    }
-
-    // Broadcast state to both TCP and WebSocket clients
-    private void broadcastStateToAll() {
-        if (player1TCP != null) player1TCP.sendState(state);
-        if (player2TCP != null) player2TCP.sendState(state);
-        // WebSocket broadcast includes only those who chose a slot (attachment is Integer)
-        String json = String.format(
-          "{"
-        +   "\"type\":\"STATE\","                    // message type
-        +   "\"p1Y\":%d,\"p2Y\":%d,"                  // paddle positions
-        +   "\"ballX\":%d,\"ballY\":%d,"              // ball
-        +   "\"score1\":%d,\"score2\":%d,"              // scores
-        +   "\"paused\":%b,\"winner\":%d,"             // paused + winner
-        +   "\"ready1\":%b,\"ready2\":%b"               // ready flags
-        +   "}",
-          state.paddle1Y,
-          state.paddle2Y,
-          state.ballX,
-          state.ballY,
-          state.score1,
-          state.score2,
-          state.paused,
-          state.winner,
-          state.ready1,
-          state.ready2
-        );
-        synchronized (wsClients) {
-            for (WebSocket w : wsClients) {
-                Object attach = w.getAttachment();
-                if (w.isOpen() && attach instanceof Integer) {
-                    w.send(json);
-                }
-            }
+            e.printStackTrace();
         }
     }
 
-    // ─── TCP ClientHandler ─────────────────────────────────────────────────────────
-    private class ClientHandler implements Runnable {
-        private final Socket socket;
-        private final int    playerNumber;
-        private ObjectOutputStream out;
-        private ObjectInputStream  in;
-        private volatile boolean   running = true;
-
-        public ClientHandler(Socket sock, int num) {
-            this.socket = sock;
-            this.playerNumber = num;
-            try {
-                out = new ObjectOutputStream(socket.getOutputStream());
-                in  = new ObjectInputStream(socket.getInputStream());
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-
-        public void run() {
-            try {
-                while (running) {
-                    Object obj = in.readObject();
-                    if (obj instanceof PlayerCommand) {
-                        PlayerCommand cmd = (PlayerCommand) obj;
-                        if (playerNumber == 1) cmd1.set(cmd);
-                        else                   cmd2.set(cmd);
-                    }
-                    else if (obj instanceof ControlCommand) {
-                        ControlCommand cc = (ControlCommand) obj;
-                        handleControlTCP(cc, playerNumber);
-                    }
-                }
-            } catch (IOException | ClassNotFoundException e) {
-                System.out.println("Player " + playerNumber + " disconnected: " + e.getMessage());
-                running = false;
-            }
-        }
-
-        private void handleControlTCP(ControlCommand cc, int playerNum) {
-            switch (cc.type) {
-                case READY:
-                    if (playerNum == 1) {
-                        state.ready1 = true;
-                        System.out.println("Player 1 is ready.");
-                    } else {
-                        state.ready2 = true;
-                        System.out.println("Player 2 is ready.");
-                    }
-                    break;
-                case PAUSE:
-                    state.paused = true;
-                    System.out.println("Game paused by player " + playerNum + ".");
-                    break;
-                case RESUME:
-                    state.paused = false;
-                    System.out.println("Game resumed by player " + playerNum + ".");
-                    break;
-                case RESTART:
-                    if (playerNum == 1) state.ready1 = false;
-                    else                 state.ready2 = false;
-                    System.out.println("Player " + playerNum + " requested restart.");
-                    break;
-            }
-        }
-
-        public void sendState(GameState gs) {
-            if (!running) return;
-            try {
-                out.reset();
-                out.writeObject(gs);
-                out.flush();
-            } catch (IOException e) {
-                running = false;
-                try { socket.close(); } catch (IOException ex) { }
-            }
-        }
+    private void registerGauges(TcpServer tcpServer, PongWebSocketServer wsServer) {
+        metrics.histogram("pong_tick_seconds", "Time to tick every room once", scheduler.getTickTimes()::snapshot);
+        metrics.counter("pong_ticks_total", "Scheduler ticks run", scheduler::getTickCount);
+        metrics.counter("pong_tick_overruns_total", "Ticks that took longer than the tick period", scheduler::getOverruns);
+        metrics.counter("pong_ticks_skipped_total", "Ticks dropped after falling too far behind", scheduler::getSkippedTicks);
+        metrics.counter("pong_log_dropped_total", "Log events dropped because the log was backed up", EventLog::dropped);
+        metrics.gauge("pong_rooms", "Live rooms", registry::size);
+        metrics.gauge("pong_rooms_playing", "Rooms with a match in play", () ->
+            registry.rooms().stream().filter(r -> r.getPhase() == Room.Phase.PLAYING).count());
+        metrics.gauge("pong_sessions{protocol=\"tcp\"}", "Open client connections", tcpServer::getConnectionCount);
+        metrics.gauge("pong_sessions{protocol=\"ws\"}", null, () -> wsServer.getConnections().size());
+        metrics.gauge("pong_queued_frames{protocol=\"tcp\"}", "Frames queued for seated players and not yet written", () ->
+            registry.rooms().stream().mapToLong(Room::queuedTcpFrames).sum());
+        metrics.gauge("pong_queued_frames{protocol=\"ws\"}", null, () ->
+            registry.rooms().stream().mapToLong(Room::queuedWsFrames).sum());
     }
 
     // ─── WebSocket Server ──────────────────────────────────────────────────────────
     private class PongWebSocketServer extends WebSocketServer {
+        // onMessage runs on several worker threads; each decodes with its own decoder
+        private final ThreadLocal<ClientJsonDecoder> decoders = ThreadLocal.withInitial(ClientJsonDecoder::new);
+
         public PongWebSocketServer(int port) {
-            super(new InetSocketAddress("0.0.0.0", port));
+            // Offer binary WireProtocol messages; clients that ask for no subprotocol get JSON
+            super(new InetSocketAddress("0.0.0.0", port), List.of(new Draft_6455(Collections.emptyList(),
+                List.of(new Protocol(WireProtocol.WS_SUBPROTOCOL), new Protocol("")))));
         }
 
         @Override
         public void onOpen(WebSocket conn, ClientHandshake handshake) {
-            System.out.println("WebSocket: new connection—waiting for secret...");
+            // Cap the kernel buffer so a stalled client backs up into its frame queue (see Room)
+            if (conn instanceof WebSocketImpl && ((WebSocketImpl) conn).getChannel() instanceof SocketChannel) {
+                try {
+                    ((SocketChannel) ((WebSocketImpl) conn).getChannel()).socket().setSendBufferSize(Room.SEND_BUFFER_BYTES);
+                } catch (IOException e) {
+                    EventLog.log("ws.error", null, 0, "could not size the send buffer", e);
+                }
+            }
+            EventLog.log("ws.opened", WebSocketFanout.isBinary(conn) ? "binary" : "json");
             conn.send("ENTER_SECRET");
-            wsClients.add(conn);
         }
 
         @Override
         public void onClose(WebSocket conn, int code, String reason, boolean remote) {
-            System.out.println("WebSocket: connection closed: " + reason);
-            // If this WS had chosen a slot, clear that slot flag
+            // If this WS had taken a seat, free it
             Object attach = conn.getAttachment();
-            if (attach instanceof Integer) {
-                int slot = (Integer) attach;
-                if (slot == 1) player1WS = false;
-                else           player2WS = false;
+            if (attach instanceof Room.Seat) {
+                Room.Seat seat = (Room.Seat) attach;
+                EventLog.log("ws.closed", seat.room.getId(), seat.slot, reason);
+                registry.leave(seat.room, seat.slot, conn);
+            } else {
+                EventLog.log("ws.closed", reason);
             }
-            wsClients.remove(conn);
         }
 
         @Override
         public void onMessage(WebSocket conn, String message) {
-            message = message.trim();
-
+            metrics.wsMessagesReceived.increment();
+            metrics.wsBytesReceived.add(WebSocketFanout.utf8Length(message));
             // 1) Password handshake
             if (conn.getAttachment() == null) {
+                message = message.trim();
                 if (SHARED_SECRET.equals(message)) {
                     conn.send("OK");
                     conn.setAttachment("authed");
-                    System.out.println("WebSocket client authenticated.");
+                    EventLog.log("ws.authenticated");
                 } else {
                     conn.send("FAIL");
-                    System.out.println("WebSocket client failed auth: " + message);
+                    EventLog.log("ws.auth_failed", "wrong secret: " + message);
                     conn.close();
                 }
                 return;
             }
 
-            // 2) Now expecting { "action":"CHOOSE_PLAYER","p":1 } or p:2
+            // 2) Now expecting { "action":"CHOOSE_PLAYER","p":1 } or p:2, optionally with "room":"<name>"
+            //    and "rate":<state messages per second>
             Object attach = conn.getAttachment();
+            ClientJsonDecoder in = decoders.get();
+            int kind = in.decode(message);
             if ("authed".equals(attach)) {
-                JsonObject obj = JsonParser.parseString(message).getAsJsonObject();
-                if (obj.has("action") && "CHOOSE_PLAYER".equals(obj.get("action").getAsString())) {
-                    int p = obj.get("p").getAsInt(); // must be 1 or 2
-                    if (p == 1) {
-                        player1WS = true;
-                        conn.setAttachment(1);
-                        System.out.println("WebSocket assigned to Player 1");
-                    } else if (p == 2) {
-                        player2WS = true;
-                        conn.setAttachment(2);
-                        System.out.println("WebSocket assigned to Player 2");
-                    } else {
-                        System.out.println("WebSocket bad player number: " + p);
+                if (kind == ClientJsonDecoder.CHOOSE_PLAYER) {
+                    int p = in.player; // must be 1 or 2
+                    String roomId = in.room;
+                    int rate = in.rate;
+                    if (p != 1 && p != 2) {
+                        EventLog.log("ws.bad_player", "player " + p);
+                        conn.close();
+                        return;
+                    }
+                    Room room = registry.joinWs(conn, roomId, p, rate);
+                    if (room == null) {
+                        EventLog.log("ws.join_failed", roomId, p);
                         conn.close();
+                        return;
                     }
+                    EventLog.log("ws.joined", room.getId(), p);
                 }
                 return;
             }
 
-            // 3) Handle MOVE or CONTROL for a known player
-            int wsP = (Integer) conn.getAttachment();
-            JsonObject obj = JsonParser.parseString(message).getAsJsonObject();
-            String t = obj.get("type").getAsString();
-
-            if ("MOVE".equals(t)) {
-                int dir = obj.get("dir").getAsInt();
-                if (wsP == 1) cmd1.set(new PlayerCommand(dir));
-                else         cmd2.set(new PlayerCommand(dir));
+            // 3) Handle MOVE or CONTROL for a seated player
+            Room.Seat seat = (Room.Seat) attach;
+            if (kind == ClientJsonDecoder.MOVE) {
+                seat.room.queueMove(seat.slot, PlayerCommand.code(in.dir, 0));
             }
-            else if ("CONTROL".equals(t)) {
-                String action = obj.get("action").getAsString();
-                ControlCommand cc = new ControlCommand(ControlCommand.Type.valueOf(action));
-                if (wsP == 1) {
-                    switch (cc.type) {
-                        case READY:
-                            state.ready1 = true;
-                            System.out.println("Player 1 is ready.");
-                            break;
-                        case PAUSE:
-                            state.paused = true;
-                            System.out.println("Game paused by Player 1.");
-                            break;
-                        case RESUME:
-                            state.paused = false;
-                            System.out.println("Game resumed by Player 1.");
-                            break;
-                        case RESTART:
-                            state.ready1 = false;
-                            System.out.println("Player 1 requested restart.");
-                            break;
-                    }
-                } else {
-                    switch (cc.type) {
-                        case READY:
-                            state.ready2 = true;
-                            System.out.println("Player 2 is ready.");
-                            break;
-                        case PAUSE:
-                            state.paused = true;
-                            System.out.println("Game paused by Player 2.");
-                            break;
-                        case RESUME:
-                            state.paused = false;
-                            System.out.println("Game resumed by Player 2.");
-                            break;
-                        case RESTART:
-                            state.ready2 = false;
-                            System.out.println("Player 2 requested restart.");
-                            break;
-                    }
-                }
+            else if (kind == ClientJsonDecoder.CONTROL) {
+                seat.room.handleControl(seat.slot, in.control);
             }
         }
 
-        /**
-         * Broadcast the full GameState (including ready1/ready2) as JSON to every WebSocket client
-         * that has already chosen a slot (attachment is Integer).
-         */
-        public void broadcastGameState(GameState gs) {
-            String json = String.format(
-              "{"
-            +   "\"type\":\"STATE\","                    // message type
-            +   "\"p1Y\":%d,\"p2Y\":%d,"                  // paddle positions
-            +   "\"ballX\":%d,\"ballY\":%d,"              // ball
-            +   "\"score1\":%d,\"score2\":%d,"              // scores
-            +   "\"paused\":%b,\"winner\":%d,"             // paused + winner
-            +   "\"ready1\":%b,\"ready2\":%b"               // ready flags
-            +   "}",
-              gs.paddle1Y,
-              gs.paddle2Y,
-              gs.ballX,
-              gs.ballY,
-              gs.score1,
-              gs.score2,
-              gs.paused,
-              gs.winner,
-              gs.ready1,
-              gs.ready2
-            );
-            synchronized (wsClients) {
-                for (WebSocket w : wsClients) {
-                    Object attach = w.getAttachment();
-                    if (w.isOpen() && attach instanceof Integer) {
-                        w.send(json);
-                    }
+        // MOVE or CONTROL from a seated player on the binary subprotocol: type byte, then payload
+        @Override
+        public void onMessage(WebSocket conn, ByteBuffer message) {
+            metrics.wsMessagesReceived.increment();
+            metrics.wsBytesReceived.add(message.remaining());
+            Object attach = conn.getAttachment();
+            if (!(attach instanceof Room.Seat)) {
+                EventLog.log("ws.protocol_error", "binary message before taking a seat");
+                conn.close();
+                return;
+            }
+            Room.Seat seat = (Room.Seat) attach;
+            try {
+                if (!message.hasRemaining()) throw new WireProtocol.ProtocolException("empty message");
+                int type = message.get() & 0xFF;
+                if (type == WireProtocol.MOVE) {
+                    seat.room.queueMove(seat.slot, WireProtocol.readWsMove(message));
+                } else if (type == WireProtocol.CONTROL) {
+                    seat.room.handleControl(seat.slot, WireProtocol.readControl(message));
+                } else {
+                    throw new WireProtocol.ProtocolException("unexpected type " + type);
                 }
+            } catch (WireProtocol.ProtocolException e) {
+                EventLog.log("ws.protocol_error", seat.room.getId(), seat.slot, e.getMessage());
+                conn.close();
             }
         }
 
         @Override
         public void onError(WebSocket conn, Exception ex) {
-            ex.printStackTrace();
+            Object attach = conn != null ? conn.getAttachment() : null;
+            if (attach instanceof Room.Seat) {
+                Room.Seat seat = (Room.Seat) attach;
+                EventLog.log("ws.error", seat.room.getId(), seat.slot, null, ex);
+            } else {
+                EventLog.log("ws.error", null, 0, null, ex);
+            }
         }
 
         @Override
         public void onStart() {
-            System.out.println("WebSocket server started.");
+            EventLog.log("ws.started");
         }
     }
 }
@@ -0,0 +1,264 @@
+import java.util.SplittableRandom;
+
+/**
+ * PongSimulation.java
+ *
+ * The rules of one Pong match, with no networking, threads or clocks attached:
+ * paddle movement, the ball's flight and bounces, scoring and serving.
+ *
+ * The simulation is deterministic. All of its state is integer fixed point
+ * (positions in 1/SUBPIXEL px, sweep times in 1/TIME_ONE tick) and its only source
+ * of randomness is a SplittableRandom created from the match seed. Each simulation
+ * owns its generator, so parallel rooms never contend on a shared Random. Two
+ * matches started with the same tick rate and seed, stepped with the same inputs,
+ * produce identical GameStates on any JVM. That makes a match replayable from its
+ * seed and input log, and lets a client or a verifier re-run the server's steps.
+ *
+ * Only the physics fields of the GameState are owned here (ball, paddles, scores,
+ * winner, input acks); ready and paused are left to the caller.
+ */
+public final class PongSimulation {
+    // Game dimensions
+    public static final int WIDTH         = 800;
+    public static final int HEIGHT        = 600;
+    public static final int PADDLE_WIDTH  = 10;
+    public static final int PADDLE_HEIGHT = 80;
+    public static final int BALL_SIZE     = 15;
+    public static final int TARGET_SCORE  = 5;
+
+    // Speeds (PADDLE_SPEED and GameState.ballDX/ballDY) are pixels per 1/REFERENCE_HZ s,
+    // whatever the tick rate. Positions are simulated in 1/SUBPIXEL px so that the
+    // smaller per-tick steps of a faster simulation are not rounded away.
+    public static final int PADDLE_SPEED  = 5;  // PongClient predicts with the same value
+    public static final int REFERENCE_HZ  = 60;
+    public static final int SUBPIXEL      = 256;
+
+    // (The package-private members are shared with PongBatch. It steps clear-of-everything
+    // ticks itself and lends each match to a PongSimulation for everything else, so
+    // there is one implementation of the rules.)
+
+    // Serve speed, and the limit on vertical speed after paddle spin
+    static final int SERVE_DX = 5;
+    static final int SERVE_DY = 3;
+    static final int MAX_DY   = 8;
+
+    // Bounds of the ball's top-left corner, in sub-pixels
+    static final int BALL_MAX_Y   = (HEIGHT - BALL_SIZE) * SUBPIXEL;
+    static final int LEFT_FACE_X  = PADDLE_WIDTH * SUBPIXEL;
+    static final int RIGHT_FACE_X = (WIDTH - PADDLE_WIDTH - BALL_SIZE) * SUBPIXEL;
+    static final int PADDLE_MAX_Y = (HEIGHT - PADDLE_HEIGHT) * SUBPIXEL;
+
+    // One tick in sweep-time units
+    static final long TIME_ONE = 1 << 16;
+
+    // More bounces than this in one tick cannot happen at legal speeds; it only bounds the loop
+    static final int MAX_BOUNCES_PER_TICK = 4;
+
+    private final int tickRate;
+    final GameState state = new GameState();
+
+    // Reseeded at the start of every match
+    SplittableRandom rng;
+    long seed;
+
+    // Sub-pixel positions behind state.ballX/ballY/paddle1Y/paddle2Y
+    int ballXs, ballYs, paddle1Ys, paddle2Ys;
+
+    /**
+     * @param tickRate how many times per second {@link #step} will be called
+     * @param seed     seed of the first match (see {@link #newMatch})
+     */
+    public PongSimulation(int tickRate, long seed) {
+        this.tickRate = tickRate;
+        newMatch(seed);
+    }
+
+    /** The simulated state. Updated in place by every call; never replaced. */
+    public GameState state() {
+        return state;
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    /** Seed of the current match: with the inputs, all that is needed to replay it. */
+    public long getSeed() {
+        return seed;
+    }
+
+    // ─── Match control ────────────────────────────────────────────────────────────
+
+    /**
+     * Start a match whose every random choice (serve heights and directions, paddle
+     * spin) comes from seed. Centres both paddles and clears the scores and winner.
+     */
+    public void newMatch(long seed) {
+        this.seed = seed;
+        this.rng = new SplittableRandom(seed);
+        state.paddle1Y = HEIGHT/2 - PADDLE_HEIGHT/2;
+        state.paddle2Y = HEIGHT/2 - PADDLE_HEIGHT/2;
+        paddle1Ys = state.paddle1Y * SUBPIXEL;
+        paddle2Ys = state.paddle2Y * SUBPIXEL;
+        state.score1 = 0;
+        state.score2 = 0;
+        state.winner = 0;
+    }
+
+    /** Put the ball in the centre at a random height, moving toward player dir's side. */
+    public void serve(int dir) {
+        state.ballX = WIDTH/2 - BALL_SIZE/2;
+        state.ballY = rng.nextInt(HEIGHT - BALL_SIZE);
+        state.ballDX = (dir == 1) ? -SERVE_DX : SERVE_DX;
+        state.ballDY = rng.nextBoolean() ? SERVE_DY : -SERVE_DY;
+        ballXs = state.ballX * SUBPIXEL;
+        ballYs = state.ballY * SUBPIXEL;
+    }
+
+    // ─── Stepping ─────────────────────────────────────────────────────────────────
+
+    /** Advance one tick with each player's current input. */
+    public void step(PlayerCommand input1, PlayerCommand input2) {
+        step(input1.code(), input2.code());
+    }
+
+    /** Advance one tick with each player's current input as a PlayerCommand code. */
+    public void step(int input1, int input2) {
+        applyPaddle(input1, 1);
+        applyPaddle(input2, 2);
+        moveBall();
+        if (speedsUp(state.score1, state.score2)) increaseDifficulty();
+    }
+
+    /** Sub-pixel distance covered in one tick at speed (pixels per 1/REFERENCE_HZ s). */
+    private int perTick(int speed) {
+        return perTick(speed, tickRate);
+    }
+
+    static int perTick(int speed, int tickRate) {
+        return speed * SUBPIXEL * REFERENCE_HZ / tickRate;
+    }
+
+    /** Paddle position (sub-pixels) after moving step sub-pixels in direction dir, kept on the court. */
+    static int movePaddle(int paddleYs, int dir, int step) {
+        return Math.max(0, Math.min(PADDLE_MAX_Y, paddleYs + dir * step));
+    }
+
+    /** Whether the ball speeds up after a tick ending with this score (every multiple of 10 points). */
+    static boolean speedsUp(int score1, int score2) {
+        int total = score1 + score2;
+        return total > 0 && total % 10 == 0;
+    }
+
+    private void applyPaddle(int cmd, int player) {
+        int dir = PlayerCommand.direction(cmd);
+        int step = perTick(PADDLE_SPEED);
+        int before;
+        if (player == 1) {
+            before = state.paddle1Y;
+            paddle1Ys = movePaddle(paddle1Ys, dir, step);
+            state.paddle1Y = paddle1Ys / SUBPIXEL;
+        } else {
+            before = state.paddle2Y;
+            paddle2Ys = movePaddle(paddle2Ys, dir, step);
+            state.paddle2Y = paddle2Ys / SUBPIXEL;
+        }
+        acknowledge(cmd, player, Math.abs((player == 1 ? state.paddle1Y : state.paddle2Y) - before));
+    }
+
+    /**
+     * Record which input is being applied and how many pixels it has moved the paddle.
+     * A paddle that does not move (idle or against a wall) changes nothing, so it sends
+     * no deltas; the client's clamped replay comes out the same.
+     */
+    private void acknowledge(int cmd, int player, int moved) {
+        int seq = PlayerCommand.seq(cmd);
+        if (player == 1) {
+            if (state.ack1 != seq) { state.ack1 = seq; state.ackMoved1 = 0; }
+            state.ackMoved1 = Math.min(0xFFFF, state.ackMoved1 + moved);
+        } else {
+            if (state.ack2 != seq) { state.ack2 = seq; state.ackMoved2 = 0; }
+            state.ackMoved2 = Math.min(0xFFFF, state.ackMoved2 + moved);
+        }
+    }
+
+    /**
+     * Move the ball through one tick. Instead of jumping to the end position and then
+     * testing for overlap, the step is swept: find the first wall or paddle face the
+     * ball reaches during the tick, move it exactly there, resolve the bounce (or the
+     * miss), and continue with the rest of the tick. However fast the ball or low the
+     * tick rate, it can neither jump past a paddle nor end up inside one.
+     */
+    void moveBall() {
+        long remaining = TIME_ONE; // part of the tick still to simulate
+        for (int i = 0; i < MAX_BOUNCES_PER_TICK && remaining > 0; i++) {
+            int vx = perTick(state.ballDX);
+            int vy = perTick(state.ballDY);
+
+            // Time until the ball reaches the paddle face / wall it is heading for
+            long tFace = vx < 0 ? timeTo(LEFT_FACE_X - ballXs, vx)
+                       : vx > 0 ? timeTo(RIGHT_FACE_X - ballXs, vx)
+                       : Long.MAX_VALUE;
+            long tWall = vy < 0 ? timeTo(-ballYs, vy)
+                       : vy > 0 ? timeTo(BALL_MAX_Y - ballYs, vy)
+                       : Long.MAX_VALUE;
+
+            long t = remaining;
+            boolean face = false, wall = false;
+            if (tFace <= t) { t = tFace; face = true; }
+            if (tWall < t)  { t = tWall; face = false; wall = true; }
+
+            ballXs += (int) (vx * t / TIME_ONE);
+            ballYs += (int) (vy * t / TIME_ONE);
+            remaining -= t;
+
+            if (face) {
+                ballXs = vx < 0 ? LEFT_FACE_X : RIGHT_FACE_X;
+                if (!hitPaddle(vx < 0 ? 1 : 2)) break; // point scored
+            } else if (wall) {
+                ballYs = vy < 0 ? 0 : BALL_MAX_Y;
+                state.ballDY = -state.ballDY;
+            }
+        }
+        state.ballX = Math.floorDiv(ballXs, SUBPIXEL);
+        state.ballY = Math.floorDiv(ballYs, SUBPIXEL);
+    }
+
+    /** Sweep time to cover distance at velocity v (same sign); 0 if already there or past. */
+    static long timeTo(int distance, int v) {
+        return Math.max(0, distance * TIME_ONE / v);
+    }
+
+    /**
+     * The ball has reached player's paddle face. Bounce it if the paddle covers it,
+     * otherwise award the point. Returns true if the ball bounced.
+     */
+    private boolean hitPaddle(int player) {
+        int paddleYs = player == 1 ? paddle1Ys : paddle2Ys;
+        if (ballYs + BALL_SIZE * SUBPIXEL >= paddleYs && ballYs <= paddleYs + PADDLE_HEIGHT * SUBPIXEL) {
+            bounceOffPaddle();
+            return true;
+        }
+        if (player == 1) {
+            state.score2++;
+            if (state.score2 >= TARGET_SCORE) state.winner = 2;
+            else serve(1);
+        } else {
+            state.score1++;
+            if (state.score1 >= TARGET_SCORE) state.winner = 1;
+            else serve(2);
+        }
+        return false;
+    }
+
+    private void bounceOffPaddle() {
+        state.ballDX = -state.ballDX;
+        state.ballDY += rng.nextInt(4) - 2;
+        state.ballDY = Math.max(-MAX_DY, Math.min(MAX_DY, state.ballDY));
+    }
+
+    void increaseDifficulty() {
+        state.ballDX += (state.ballDX > 0 ? 1 : -1);
+        state.ballDY += (state.ballDY > 0 ? 1 : -1);
+    }
+}
@@ -0,0 +1,536 @@
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.java_websocket.WebSocket;
+
+/**
+ * Room.java
+ *
+ * One independent Pong match. A room owns everything that used to live on the
+ * PongServer singleton for its single match:
+ *   - the PongSimulation (and its GameState) and the two players' queued inputs,
+ *   - which connection (TCP or WebSocket) holds slot 1 and slot 2,
+ *   - the ready → play → game over → restart cycle.
+ *
+ * Rooms never block: TickScheduler calls {@link #tick()} once per simulation step
+ * (tickRate Hz) and the room advances its own phase. Clients are sent state at their
+ * own rate, which may be lower: each connection reads from a {@link Feed} for its
+ * send interval. Per-room memory is fixed (one GameState, two
+ * input queues, two seats and the WebSocket clients seated in it), so the number
+ * of rooms a JVM can host is bounded only by MatchRegistry's room limit.
+ *
+ * Sending never waits on a socket: frames are only queued, and each client may have
+ * at most MAX_QUEUED_FRAMES of them unwritten. While a client is at that limit its
+ * sends are skipped, and it gets a keyframe of the then-current state once it has
+ * caught up, so a slow client sees fewer, fresher states instead of an ever-growing
+ * backlog. A client still backed up after EVICT_AFTER_SECONDS is disconnected.
+ */
+public class Room implements TickScheduler.Tickable {
+    // While nobody is playing, send the lobby state at this rate
+    private static final int LOBBY_BROADCAST_HZ = 10;
+
+    // Marks "nothing changed, no delta to send" in the per-tick frame cache
+    private static final ByteBuffer NO_CHANGE = ByteBuffer.allocate(0);
+
+    // Unwritten frames a client may have queued before its sends are skipped (~250 ms at 60 Hz)
+    static final int MAX_QUEUED_FRAMES = 16;
+
+    // How long a client may stay at that limit before it is disconnected
+    static final int EVICT_AFTER_SECONDS = 5;
+
+    // Kernel send buffer for player sockets (Linux doubles it). Left to autotuning it
+    // grows to megabytes, minutes of state a stalled client would never read before
+    // its frame queue filled; this is still ample for a JSON feed over a slow link.
+    static final int SEND_BUFFER_BYTES = 4 * 1024;
+
+    /** Where the room is in its match cycle. */
+    public enum Phase {
+        LOBBY,     // waiting for both seats to be taken and both players to click READY
+        PLAYING,   // match running
+        GAME_OVER  // winner decided, waiting for both players to click RESTART
+    }
+
+    /** Attached to a WebSocket once it has taken a seat in a room. */
+    public static final class Seat {
+        public final Room room;
+        public final int  slot;
+
+        // Negotiated WireProtocol.WS_SUBPROTOCOL: binary frames instead of JSON
+        public final boolean binary;
+
+        // Set until the client has a full STATE to apply deltas to
+        volatile boolean needsKeyframe = true;
+
+        // Consecutive sends skipped because the client's queue was full (tick thread only)
+        int skipped;
+
+        final Feed feed;
+
+        Seat(Room room, int slot, Feed feed, boolean binary) {
+            this.room = room;
+            this.slot = slot;
+            this.feed = feed;
+            this.binary = binary;
+        }
+    }
+
+    /**
+     * Everything needed to serve the clients of one send interval: the state they
+     * were last sent (the base of their deltas) and this tick's frames, built on first
+     * use and shared by all of them. Used by the tick only, apart from construction.
+     */
+    static final class Feed {
+        final int interval;       // send every N ticks
+        final int keyframeEvery;  // sends between full keyframes (~1 s)
+        final GameState lastSent = new GameState();
+        final StateJsonEncoder jsonKey   = new StateJsonEncoder();
+        final StateJsonEncoder jsonDelta = new StateJsonEncoder();
+        int sent;
+        boolean due, keyframe;
+        ByteBuffer tcpKeyFrame, tcpDeltaFrame, wsKeyFrame, wsDeltaFrame, wsBinKeyFrame, wsBinDeltaFrame;
+
+        Feed(int interval, int tickRate) {
+            this.interval = interval;
+            this.keyframeEvery = Math.max(1, tickRate / interval);
+        }
+    }
+
+    private final String id;
+    private final int tickRate;
+    private final int defaultSendRate;
+
+    // Match state: the simulation owns the physics fields, the room the ready/paused flags
+    private final PongSimulation sim;
+    private final GameState state;
+
+    // Source of match seeds, private to this room (tick thread only after construction)
+    private final SplittableRandom seeds;
+
+    // Server-wide tick, broadcast and traffic statistics
+    private final Metrics metrics;
+    private int matchNumber = 1;
+
+    // Movement inputs queued by the network threads, and the PlayerCommand codes each
+    // paddle is following (tick thread only; one queued input is taken per tick)
+    private final InputQueue input1 = new InputQueue();
+    private final InputQueue input2 = new InputQueue();
+    private int cmd1 = PlayerCommand.STOP.code();
+    private int cmd2 = PlayerCommand.STOP.code();
+
+    // Whether this tick steps the match (playing and not paused); read by queueMove
+    private volatile boolean stepping;
+
+    private volatile Phase phase = Phase.LOBBY;
+    private long ticks = 0;
+    private int lobbyTicks = 0;
+
+    // Slot ownership: each slot is held by at most one TCP handler or one WebSocket.
+    // Written under the room lock, read lock-free by the tick.
+    private volatile TcpConnection player1TCP, player2TCP;
+    private volatile WebSocket     player1WS,  player2WS;
+
+    // WebSocket connections seated in this room. Copy-on-write: joins and leaves copy
+    // the (tiny) array, the tick iterates a snapshot without ever taking a lock.
+    private final Set<WebSocket> wsClients = new CopyOnWriteArraySet<>();
+
+    // One feed per distinct send interval in use; added under the room lock, never removed
+    private final List<Feed> feeds = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param tickRate        simulation steps per second (how often TickScheduler calls tick)
+     * @param defaultSendRate state messages per second for clients that do not ask for a rate
+     * @param seeds           where this room's match seeds come from
+     * @param metrics         where tick times and traffic are recorded
+     */
+    public Room(String id, int tickRate, int defaultSendRate, SplittableRandom seeds, Metrics metrics) {
+        this.id = id;
+        this.tickRate = tickRate;
+        this.defaultSendRate = defaultSendRate;
+        this.seeds = seeds;
+        this.metrics = metrics;
+        this.sim = new PongSimulation(tickRate, seeds.nextLong());
+        this.state = sim.state();
+        initGame();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /** Frames queued for this room's TCP players and not yet written to their sockets. */
+    public int queuedTcpFrames() {
+        TcpConnection tcp1 = player1TCP, tcp2 = player2TCP;
+        return (tcp1 != null ? tcp1.queuedFrames() : 0) + (tcp2 != null ? tcp2.queuedFrames() : 0);
+    }
+
+    /** Frames queued for this room's WebSocket clients and not yet written. */
+    public int queuedWsFrames() {
+        int queued = 0;
+        for (WebSocket w : wsClients) queued += WebSocketFanout.queued(w);
+        return queued;
+    }
+
+    // ─── Seats ────────────────────────────────────────────────────────────────────
+
+    /** True if the given slot (1 or 2) is not held by any connection. */
+    public boolean isFree(int slot) {
+        return slot == 1 ? player1TCP == null && player1WS == null
+                         : player2TCP == null && player2WS == null;
+    }
+
+    public boolean hasFreeSlot() {
+        return isFree(1) || isFree(2);
+    }
+
+    public boolean isEmpty() {
+        return isFree(1) && isFree(2);
+    }
+
+    /** Seat a TCP client in the lowest free slot. Returns the slot, or 0 if the room is full. */
+    synchronized int seat(TcpConnection handler) {
+        int slot = isFree(1) ? 1 : isFree(2) ? 2 : 0;
+        if (slot == 0) return 0;
+        handler.feed = feedFor(defaultSendRate);
+        // Tell the client its slot before the tick thread can see it and send it state
+        ByteBuffer seat = ByteBuffer.allocate(WireProtocol.SEAT_FRAME_SIZE);
+        WireProtocol.writeSeat(seat, slot);
+        handler.send(seat.flip());
+        if (slot == 1) player1TCP = handler;
+        else           player2TCP = handler;
+        return slot;
+    }
+
+    /**
+     * Seat a WebSocket in the given slot, to be sent state sendRate times a second
+     * (0 = the server default). Returns false if the slot is already taken.
+     */
+    synchronized boolean seat(WebSocket conn, int slot, int sendRate) {
+        if (!isFree(slot)) return false;
+        if (slot == 1) player1WS = conn;
+        else           player2WS = conn;
+        Feed feed = feedFor(sendRate > 0 ? sendRate : defaultSendRate);
+        conn.setAttachment(new Seat(this, slot, feed, WebSocketFanout.isBinary(conn)));
+        wsClients.add(conn);
+        return true;
+    }
+
+    /**
+     * The feed for the send interval closest to sendRate (at most once per tick).
+     * Rates are rounded to whole tick intervals so that clients share feeds and frames.
+     */
+    private Feed feedFor(int sendRate) {
+        int rate = Math.max(1, Math.min(tickRate, sendRate));
+        int interval = Math.max(1, Math.round((float) tickRate / rate));
+        for (Feed f : feeds) {
+            if (f.interval == interval) return f;
+        }
+        Feed f = new Feed(interval, tickRate);
+        feeds.add(f);
+        return f;
+    }
+
+    /** Free a slot held by the given connection; the tick stops that paddle. */
+    synchronized void release(int slot, Object owner) {
+        if (slot == 1) {
+            if (player1TCP == owner) player1TCP = null;
+            if (player1WS  == owner) player1WS  = null;
+        } else {
+            if (player2TCP == owner) player2TCP = null;
+            if (player2WS  == owner) player2WS  = null;
+        }
+        if (owner instanceof WebSocket) wsClients.remove(owner);
+    }
+
+    // ─── Player input ─────────────────────────────────────────────────────────────
+
+    /**
+     * Queue a movement input (a PlayerCommand code) from the player in slot. Called only by
+     * the thread reading that player's connection. Returns false if it was dropped
+     * because the player has flooded the queue. Drops count in pong_inputs_dropped_total
+     * only while the match is being stepped: any other time the tick drains the queue
+     * itself, and only a burst within one tick could fill it.
+     */
+    public boolean queueMove(int slot, int command) {
+        if ((slot == 1 ? input1 : input2).offer(command)) return true;
+        if (stepping) metrics.inputsDropped.increment();
+        return false;
+    }
+
+    public void handleControl(int slot, ControlCommand.Type type) {
+        switch (type) {
+            case READY:
+                if (slot == 1) state.ready1 = true;
+                else           state.ready2 = true;
+                EventLog.log("player.ready", id, slot);
+                break;
+            case PAUSE:
+                state.paused = true;
+                EventLog.log("game.paused", id, slot);
+                break;
+            case RESUME:
+                state.paused = false;
+                EventLog.log("game.resumed", id, slot);
+                break;
+            case RESTART:
+                if (slot == 1) state.ready1 = false;
+                else           state.ready2 = false;
+                EventLog.log("player.restart", id, slot);
+                break;
+        }
+    }
+
+    // ─── Match cycle ──────────────────────────────────────────────────────────────
+
+    /** Advance this room by one simulation step. Called by TickScheduler, never concurrently. */
+    public void tick() {
+        long start = System.nanoTime();
+        advance();
+        metrics.roomTick.record(System.nanoTime() - start);
+    }
+
+    private void advance() {
+        ticks++;
+        stepping = phase == Phase.PLAYING && !state.paused;
+        if (!stepping) {
+            cmd1 = hold(cmd1, input1, 1);
+            cmd2 = hold(cmd2, input2, 2);
+        }
+        switch (phase) {
+            case LOBBY:
+                if (!isFree(1) && !isFree(2) && state.ready1 && state.ready2) {
+                    sim.serve(2);
+                    phase = Phase.PLAYING;
+                    EventLog.log("match.started", id, 0, "match " + matchNumber + " at " + tickRate
+                        + " Hz, seed " + Long.toHexString(sim.getSeed()));
+                    broadcastStateToAll(true);
+                } else if (++lobbyTicks % Math.max(1, tickRate / LOBBY_BROADCAST_HZ) == 0) {
+                    broadcastStateToAll(true);
+                }
+                break;
+            case PLAYING:
+                if (!state.paused) {
+                    cmd1 = follow(cmd1, input1, 1);
+                    cmd2 = follow(cmd2, input2, 2);
+                    long stepStart = System.nanoTime();
+                    sim.step(cmd1, cmd2);
+                    metrics.simStep.record(System.nanoTime() - stepStart);
+                }
+                // The match-ending tick goes to everyone: nothing is broadcast after it
+                broadcastStateToAll(state.winner != 0);
+                if (state.winner != 0) {
+                    EventLog.log("match.won", id, state.winner);
+                    phase = Phase.GAME_OVER;
+                }
+                break;
+            case GAME_OVER:
+                if (!state.ready1 && !state.ready2) {
+                    EventLog.log("match.reset", id, 0);
+                    matchNumber++;
+                    sim.newMatch(seeds.nextLong());
+                    initGame();
+                    phase = Phase.LOBBY;
+                }
+                break;
+        }
+    }
+
+    /** The command to follow after cmd: the slot's next queued input, if any. An empty seat's paddle stops. */
+    private int follow(int cmd, InputQueue queue, int slot) {
+        if (isFree(slot)) {
+            queue.clear();
+            return PlayerCommand.STOP.code();
+        }
+        int next = queue.poll();
+        return next != InputQueue.NONE ? next : cmd;
+    }
+
+    /**
+     * The command to hold while the match is not stepped (lobby, pause, game over): the
+     * slot's newest queued input, if any, with everything older dropped. Nothing piles up
+     * in the queue, and play starts or resumes with the key the player holds now rather
+     * than a backlog of old ones.
+     */
+    private int hold(int cmd, InputQueue queue, int slot) {
+        if (isFree(slot)) {
+            queue.clear();
+            return PlayerCommand.STOP.code();
+        }
+        int next = queue.latest();
+        return next != InputQueue.NONE ? next : cmd;
+    }
+
+    private void initGame() {
+        state.ready1 = false;
+        state.ready2 = false;
+        state.paused = false;
+        input1.clear();
+        input2.clear();
+        cmd1 = PlayerCommand.STOP.code();
+        cmd2 = PlayerCommand.STOP.code();
+    }
+
+    // ─── Broadcast ────────────────────────────────────────────────────────────────
+
+    /**
+     * Send state to the TCP and WebSocket clients seated in this room whose feed is due
+     * this tick (all of them if force). Each gets either a full STATE (on its feed's
+     * keyframe sends, and the first time it is served) or a delta against what its feed
+     * sent last. Both transports deliver every queued frame in order, so that is always
+     * the client's base.
+     */
+    private void broadcastStateToAll(boolean force) {
+        boolean any = false;
+        for (Feed f : feeds) {
+            f.due = force || ticks % f.interval == 0;
+            if (f.due) {
+                f.keyframe = f.sent++ % f.keyframeEvery == 0;
+                f.tcpKeyFrame = f.tcpDeltaFrame = f.wsKeyFrame = f.wsDeltaFrame = null;
+                f.wsBinKeyFrame = f.wsBinDeltaFrame = null;
+                any = true;
+            }
+        }
+        if (!any) return;
+
+        long start = System.nanoTime();
+        TcpConnection tcp1 = player1TCP;
+        TcpConnection tcp2 = player2TCP;
+        if (tcp1 != null && tcp1.feed.due) sendTcp(tcp1, tcp1.feed);
+        if (tcp2 != null && tcp2.feed.due) sendTcp(tcp2, tcp2.feed);
+        for (WebSocket w : wsClients) {
+            Seat seat = (Seat) w.getAttachment();
+            if (seat.feed.due) sendWs(w, seat);
+        }
+
+        for (Feed f : feeds) {
+            if (f.due) {
+                f.lastSent.copyFrom(state);
+                f.due = false;
+            }
+        }
+        metrics.broadcast.record(System.nanoTime() - start);
+    }
+
+    private void sendTcp(TcpConnection conn, Feed f) {
+        if (conn.queuedFrames() >= MAX_QUEUED_FRAMES) {
+            // Too far behind: skip this state, resync with a keyframe once caught up
+            conn.needsKeyframe = true;
+            metrics.tcpFramesSkipped.increment();
+            // Evict on every skip past the limit until the client is gone; log it once
+            if (++conn.skipped >= EVICT_AFTER_SECONDS * f.keyframeEvery) {
+                if (conn.skipped == EVICT_AFTER_SECONDS * f.keyframeEvery) {
+                    EventLog.log("player.evicted", id, conn.getPlayerNumber(), "tcp client too slow");
+                    metrics.tcpClientsEvicted.increment();
+                }
+                conn.evict("too slow");
+            }
+            return;
+        }
+        conn.skipped = 0;
+        ByteBuffer frame;
+        if (f.keyframe || conn.needsKeyframe) {
+            conn.needsKeyframe = false;
+            frame = tcpKeyFrame(f);
+        } else {
+            frame = tcpDeltaFrame(f);
+        }
+        if (frame == NO_CHANGE) return;
+        conn.send(frame.duplicate());
+        metrics.tcpMessagesSent.increment();
+        metrics.tcpBytesSent.add(frame.remaining());
+    }
+
+    private void sendWs(WebSocket conn, Seat seat) {
+        Feed f = seat.feed;
+        if (WebSocketFanout.queued(conn) >= MAX_QUEUED_FRAMES) {
+            seat.needsKeyframe = true;
+            metrics.wsFramesSkipped.increment();
+            if (++seat.skipped >= EVICT_AFTER_SECONDS * f.keyframeEvery) {
+                if (seat.skipped == EVICT_AFTER_SECONDS * f.keyframeEvery) {
+                    EventLog.log("player.evicted", id, seat.slot, "websocket client too slow");
+                    metrics.wsClientsEvicted.increment();
+                }
+                WebSocketFanout.evict(conn, "too slow");
+            }
+            return;
+        }
+        seat.skipped = 0;
+        ByteBuffer frame;
+        if (f.keyframe || seat.needsKeyframe) {
+            seat.needsKeyframe = false;
+            frame = seat.binary ? wsBinKeyFrame(f) : wsKeyFrame(f);
+        } else {
+            frame = seat.binary ? wsBinDeltaFrame(f) : wsDeltaFrame(f);
+        }
+        if (frame == NO_CHANGE) return;
+        WebSocketFanout.send(conn, frame);
+        metrics.wsMessagesSent.increment();
+        metrics.wsBytesSent.add(frame.remaining());
+    }
+
+    // ─── Frames (built on first use each send, shared by every client of the feed) ─
+
+    private ByteBuffer tcpKeyFrame(Feed f) {
+        if (f.tcpKeyFrame == null) {
+            ByteBuffer buf = ByteBuffer.allocate(WireProtocol.STATE_FRAME_SIZE);
+            WireProtocol.writeState(buf, state);
+            buf.flip();
+            f.tcpKeyFrame = buf.asReadOnlyBuffer();
+        }
+        return f.tcpKeyFrame;
+    }
+
+    private ByteBuffer tcpDeltaFrame(Feed f) {
+        if (f.tcpDeltaFrame == null) {
+            int mask = WireProtocol.deltaMask(f.lastSent, state);
+            if (mask == 0) {
+                f.tcpDeltaFrame = NO_CHANGE;
+            } else {
+                ByteBuffer buf = ByteBuffer.allocate(WireProtocol.deltaFrameSize(mask));
+                WireProtocol.writeStateDelta(buf, mask, state);
+                buf.flip();
+                f.tcpDeltaFrame = buf.asReadOnlyBuffer();
+            }
+        }
+        return f.tcpDeltaFrame;
+    }
+
+    private ByteBuffer wsKeyFrame(Feed f) {
+        if (f.wsKeyFrame == null) {
+            f.jsonKey.encode(state);
+            f.wsKeyFrame = WebSocketFanout.textFrame(f.jsonKey.array(), f.jsonKey.length());
+        }
+        return f.wsKeyFrame;
+    }
+
+    private ByteBuffer wsDeltaFrame(Feed f) {
+        if (f.wsDeltaFrame == null) {
+            f.wsDeltaFrame = f.jsonDelta.encodeDelta(f.lastSent, state) == 0
+                ? NO_CHANGE
+                : WebSocketFanout.textFrame(f.jsonDelta.array(), f.jsonDelta.length());
+        }
+        return f.wsDeltaFrame;
+    }
+
+    // Binary WebSocket messages are the TCP frames without their u16 length field
+
+    private ByteBuffer wsBinKeyFrame(Feed f) {
+        if (f.wsBinKeyFrame == null) {
+            f.wsBinKeyFrame = WebSocketFanout.binaryFrame(tcpKeyFrame(f).duplicate().position(2));
+        }
+        return f.wsBinKeyFrame;
+    }
+
+    private ByteBuffer wsBinDeltaFrame(Feed f) {
+        if (f.wsBinDeltaFrame == null) {
+            ByteBuffer tcp = tcpDeltaFrame(f);
+            f.wsBinDeltaFrame = tcp == NO_CHANGE ? NO_CHANGE : WebSocketFanout.binaryFrame(tcp.duplicate().position(2));
+        }
+        return f.wsBinDeltaFrame;
+    }
+}
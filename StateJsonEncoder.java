@@ -0,0 +1,121 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * StateJsonEncoder.java
+ *
+ * Writes the WebSocket STATE message straight into a reusable byte buffer:
+ *
+ *   {"type":"STATE","p1Y":..,"p2Y":..,"ballX":..,"ballY":..,"score1":..,"score2":..,
+ *    "paused":..,"winner":..,"ready1":..,"ready2":..}
+ *
+ * The output is byte-for-byte what the old String.format call produced, but no
+ * format string is parsed, no value is boxed and nothing is allocated per call.
+ *
+ * {@link #encodeDelta} writes the DELTA message instead: the same keys, but only
+ * those whose value changed since the previous frame, e.g. {"type":"DELTA","ballX":..,"ballY":..}.
+ * An encoder holds one message at a time and is not thread-safe; each Room owns
+ * its encoders and uses them from its tick.
+ */
+public final class StateJsonEncoder {
+    /** Upper bound on the encoded size (fixed text + ten worst-case ints). */
+    public static final int MAX_SIZE = 256;
+
+    private static final byte[] TYPE_STATE = ascii("{\"type\":\"STATE\"");
+    private static final byte[] TYPE_DELTA = ascii("{\"type\":\"DELTA\"");
+    private static final byte[] P1Y      = ascii(",\"p1Y\":");
+    private static final byte[] P2Y      = ascii(",\"p2Y\":");
+    private static final byte[] BALL_X   = ascii(",\"ballX\":");
+    private static final byte[] BALL_Y   = ascii(",\"ballY\":");
+    private static final byte[] SCORE1   = ascii(",\"score1\":");
+    private static final byte[] SCORE2   = ascii(",\"score2\":");
+    private static final byte[] PAUSED   = ascii(",\"paused\":");
+    private static final byte[] WINNER   = ascii(",\"winner\":");
+    private static final byte[] READY1   = ascii(",\"ready1\":");
+    private static final byte[] READY2   = ascii(",\"ready2\":");
+    private static final byte[] TRUE     = ascii("true");
+    private static final byte[] FALSE    = ascii("false");
+
+    private final byte[] buf = new byte[MAX_SIZE];
+    private int length;
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /** Encode gs, replacing the previous contents. Returns the encoded length. */
+    public int encode(GameState gs) {
+        int p = 0;
+        p = put(TYPE_STATE, p);
+        p = put(P1Y,      p); p = putInt(gs.paddle1Y, p);
+        p = put(P2Y,      p); p = putInt(gs.paddle2Y, p);
+        p = put(BALL_X,   p); p = putInt(gs.ballX,    p);
+        p = put(BALL_Y,   p); p = putInt(gs.ballY,    p);
+        p = put(SCORE1,   p); p = putInt(gs.score1,   p);
+        p = put(SCORE2,   p); p = putInt(gs.score2,   p);
+        p = put(PAUSED,   p); p = put(gs.paused ? TRUE : FALSE, p);
+        p = put(WINNER,   p); p = putInt(gs.winner,   p);
+        p = put(READY1,   p); p = put(gs.ready1 ? TRUE : FALSE, p);
+        p = put(READY2,   p); p = put(gs.ready2 ? TRUE : FALSE, p);
+        buf[p++] = '}';
+        length = p;
+        return p;
+    }
+
+    /**
+     * Encode a DELTA message with the fields of cur that differ from prev, replacing
+     * the previous contents. Returns the encoded length, or 0 (nothing written) when
+     * no field a WebSocket client sees has changed.
+     */
+    public int encodeDelta(GameState prev, GameState cur) {
+        int p = put(TYPE_DELTA, 0);
+        int start = p;
+        if (prev.paddle1Y != cur.paddle1Y) { p = put(P1Y,    p); p = putInt(cur.paddle1Y, p); }
+        if (prev.paddle2Y != cur.paddle2Y) { p = put(P2Y,    p); p = putInt(cur.paddle2Y, p); }
+        if (prev.ballX    != cur.ballX)    { p = put(BALL_X, p); p = putInt(cur.ballX,    p); }
+        if (prev.ballY    != cur.ballY)    { p = put(BALL_Y, p); p = putInt(cur.ballY,    p); }
+        if (prev.score1   != cur.score1)   { p = put(SCORE1, p); p = putInt(cur.score1,   p); }
+        if (prev.score2   != cur.score2)   { p = put(SCORE2, p); p = putInt(cur.score2,   p); }
+        if (prev.paused   != cur.paused)   { p = put(PAUSED, p); p = put(cur.paused ? TRUE : FALSE, p); }
+        if (prev.winner   != cur.winner)   { p = put(WINNER, p); p = putInt(cur.winner,   p); }
+        if (prev.ready1   != cur.ready1)   { p = put(READY1, p); p = put(cur.ready1 ? TRUE : FALSE, p); }
+        if (prev.ready2   != cur.ready2)   { p = put(READY2, p); p = put(cur.ready2 ? TRUE : FALSE, p); }
+        if (p == start) {
+            length = 0;
+            return 0;
+        }
+        buf[p++] = '}';
+        length = p;
+        return p;
+    }
+
+    /** Backing array; the message occupies [0, length()). */
+    public byte[] array() {
+        return buf;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    private int put(byte[] bytes, int p) {
+        System.arraycopy(bytes, 0, buf, p, bytes.length);
+        return p + bytes.length;
+    }
+
+    /** Write v in decimal at p; returns the position after the last digit. */
+    private int putInt(int v, int p) {
+        if (v < 0) {
+            buf[p++] = '-';
+        } else {
+            v = -v; // work on the negative value so Integer.MIN_VALUE needs no special case
+        }
+        int digits = 1;
+        for (int t = v; t <= -10; t /= 10) digits++;
+        int end = p + digits;
+        for (int i = end - 1; i >= p; i--) {
+            buf[i] = (byte) ('0' - (v % 10));
+            v /= 10;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,95 @@
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TcpConnection.java
+ *
+ * One TCP (Java desktop) client served by TcpServer's selector thread.
+ * Reading, the secret handshake and socket writes all happen on the selector
+ * thread; {@link #send(ByteBuffer)} may be called from any thread (e.g. a tick
+ * worker) and only queues the bytes, so a slow client never blocks the caller.
+ */
+public class TcpConnection {
+    // Largest inbound frame we are willing to buffer before treating the peer as broken
+    static final int IN_CAPACITY = 8192;
+
+    final TcpServer     server;
+    final SocketChannel channel;
+    SelectionKey        key;
+
+    // Selector thread only
+    final ByteBuffer in = ByteBuffer.allocate(IN_CAPACITY);
+    final long       authDeadline;
+    boolean          authenticated = false;
+
+    // Outbound bytes waiting for the selector thread, plus whether it already knows about them
+    final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+    final AtomicInteger     queued = new AtomicInteger();  // out.size(), which is O(n)
+    final AtomicBoolean     writeRequested = new AtomicBoolean();
+    volatile boolean        open = true;
+
+    // Set when the room gives up on this client; the selector thread then disconnects it
+    volatile String evictReason;
+
+    // Seat assigned by MatchRegistry.joinTcp
+    private volatile Room room;
+    private volatile int  playerNumber;
+
+    // Set until the client has a full STATE to apply deltas to
+    volatile boolean needsKeyframe = true;
+
+    // Consecutive sends skipped because the queue was full (tick thread only)
+    int skipped;
+
+    // The room feed this client is sent state from (set when seated)
+    volatile Room.Feed feed;
+
+    TcpConnection(TcpServer server, SocketChannel channel, long authDeadline) {
+        this.server = server;
+        this.channel = channel;
+        this.authDeadline = authDeadline;
+    }
+
+    /** Called by MatchRegistry once this client has been seated. */
+    void attach(Room room, int playerNumber) {
+        this.room = room;
+        this.playerNumber = playerNumber;
+    }
+
+    public Room getRoom() {
+        return room;
+    }
+
+    public int getPlayerNumber() {
+        return playerNumber;
+    }
+
+    /**
+     * Queue bytes for this client. The buffer is written as-is and must not be
+     * modified afterwards; pass a duplicate when sharing one frame between clients.
+     */
+    public void send(ByteBuffer frame) {
+        if (!open) return;
+        out.add(frame);
+        queued.incrementAndGet();
+        if (writeRequested.compareAndSet(false, true)) {
+            server.requestWrite(this);
+        }
+    }
+
+    /** Frames queued and not yet fully written. */
+    public int queuedFrames() {
+        return queued.get();
+    }
+
+    /** Have the selector thread disconnect this client (from any thread, without waiting). */
+    public void evict(String reason) {
+        evictReason = reason;
+        server.requestWrite(this);
+    }
+}
@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TcpServer.java
+ *
+ * Non-blocking TCP front-end for Java desktop clients. One selector thread accepts
+ * connections, runs the ENTER_SECRET handshake, decodes client commands and writes
+ * queued state frames for every socket, so no client can stall another one, the
+ * accept loop, or the game tick.
+ *
+ * Protocol:
+ *   1) server sends "ENTER_SECRET\n", client answers with the secret and "\n"
+ *      (clients that do not answer within 5 s are dropped);
+ *   2) both sides then exchange WireProtocol frames: the client sends MOVE / CONTROL,
+ *      the server sends STATE.
+ */
+public class TcpServer implements Runnable {
+    private static final long   AUTH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long   SELECT_TIMEOUT_MS  = 250;
+    private static final byte[] PROMPT = "ENTER_SECRET\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final int           port;
+    private final byte[]        secret;
+    private final MatchRegistry registry;
+    private final Metrics       metrics;
+    private final Selector      selector;
+
+    // Open connections, authenticated or not (written by the selector thread only)
+    private volatile int connections;
+
+    // Connections with queued output the selector thread has not picked up yet
+    private final Queue<TcpConnection> writeRequests = new ConcurrentLinkedQueue<>();
+
+    // Connections still in the handshake, oldest (earliest deadline) first; selector thread only
+    private final ArrayDeque<TcpConnection> handshakes = new ArrayDeque<>();
+
+    public TcpServer(int port, String secret, MatchRegistry registry, Metrics metrics) throws IOException {
+        this.port = port;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.registry = registry;
+        this.metrics = metrics;
+        this.selector = Selector.open();
+    }
+
+    /** Bind the port and start the selector thread. */
+    public void start() throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        new Thread(this, "tcp-selector").start();
+    }
+
+    /** Number of open client connections, including those still in the handshake. */
+    public int getConnectionCount() {
+        return connections;
+    }
+
+    /** Called from TcpConnection.send on any thread when output was queued. */
+    void requestWrite(TcpConnection conn) {
+        writeRequests.add(conn);
+        selector.wakeup();
+    }
+
+    public void run() {
+        while (true) {
+            try {
+                selector.select(SELECT_TIMEOUT_MS);
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept((ServerSocketChannel) key.channel());
+                        continue;
+                    }
+                    TcpConnection conn = (TcpConnection) key.attachment();
+                    try {
+                        if (key.isReadable())               read(conn);
+                        if (key.isValid() && key.isWritable()) flush(conn);
+                    } catch (RuntimeException e) {
+                        failed(conn, e);
+                    }
+                }
+                TcpConnection conn;
+                while ((conn = writeRequests.poll()) != null) {
+                    try {
+                        flush(conn);
+                    } catch (RuntimeException e) {
+                        failed(conn, e);
+                    }
+                }
+                expireHandshakes();
+            } catch (IOException | RuntimeException e) {
+                // This is the only TCP thread: whatever went wrong, keep serving everyone else
+                EventLog.log("tcp.error", null, 0, null, e);
+            }
+        }
+    }
+
+    /**
+     * A bug surfaced while serving conn (in this class, a Room, or anything they call).
+     * Log it and drop that client rather than let it end the selector thread.
+     */
+    private void failed(TcpConnection conn, RuntimeException e) {
+        Room room = conn.getRoom();
+        EventLog.log("tcp.error", room != null ? room.getId() : null, conn.getPlayerNumber(), "unexpected error", e);
+        try {
+            disconnect(conn, "server error");
+        } catch (RuntimeException again) {
+            close(conn);
+        }
+    }
+
+    // ─── Accept & handshake ───────────────────────────────────────────────────────
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel ch = serverChannel.accept();
+        if (ch == null) return;
+        ch.configureBlocking(false);
+        ch.socket().setTcpNoDelay(true);
+        ch.socket().setSendBufferSize(Room.SEND_BUFFER_BYTES);
+        TcpConnection conn = new TcpConnection(this, ch, System.nanoTime() + AUTH_TIMEOUT_NANOS);
+        conn.key = ch.register(selector, SelectionKey.OP_READ, conn);
+        handshakes.add(conn);
+        connections++;
+        conn.send(ByteBuffer.wrap(PROMPT));
+    }
+
+    private void expireHandshakes() {
+        long now = System.nanoTime();
+        TcpConnection conn;
+        while ((conn = handshakes.peek()) != null) {
+            if (conn.authenticated || !conn.open) {
+                handshakes.poll();
+            } else if (now - conn.authDeadline >= 0) {
+                handshakes.poll();
+                EventLog.log("tcp.auth_failed", "timed out");
+                close(conn);
+            } else {
+                break;
+            }
+        }
+    }
+
+    /** Look for the secret line; on success seat the client and switch to binary frames. */
+    private void handshake(TcpConnection conn) {
+        ByteBuffer in = conn.in;
+        int newline = -1;
+        for (int i = in.position(); i < in.limit(); i++) {
+            if (in.get(i) == '\n') { newline = i; break; }
+        }
+        if (newline < 0) {
+            if (in.remaining() == in.capacity()) close(conn); // a whole buffer without a newline
+            return;
+        }
+        int len = newline - in.position();
+        if (len > 0 && in.get(newline - 1) == '\r') len--;
+        byte[] received = new byte[len];
+        in.get(received);
+        in.position(newline + 1);
+
+        if (!Arrays.equals(secret, received)) {
+            EventLog.log("tcp.auth_failed", "wrong secret: " + new String(received, StandardCharsets.UTF_8));
+            close(conn);
+            return;
+        }
+        conn.authenticated = true;
+        EventLog.log("tcp.authenticated");
+
+        Room room = registry.joinTcp(conn);
+        if (room == null) {
+            close(conn);
+            return;
+        }
+        EventLog.log("tcp.joined", room.getId(), conn.getPlayerNumber());
+    }
+
+    // ─── Reading ──────────────────────────────────────────────────────────────────
+    private void read(TcpConnection conn) {
+        int n;
+        try {
+            n = conn.channel.read(conn.in);
+        } catch (IOException e) {
+            disconnect(conn, e.getMessage());
+            return;
+        }
+        if (n < 0) {
+            disconnect(conn, "end of stream");
+            return;
+        }
+        metrics.tcpBytesReceived.add(n);
+
+        ByteBuffer in = conn.in;
+        in.flip();
+        try {
+            if (!conn.authenticated) handshake(conn);
+            if (conn.authenticated && conn.open) {
+                int size;
+                while ((size = WireProtocol.frameSize(in)) >= 0) {
+                    int end = in.position() + size;
+                    int limit = in.limit();
+                    in.position(in.position() + 2);
+                    in.limit(end); // a short frame must not read into the next one
+                    try {
+                        int type = WireProtocol.readType(in);
+                        WireProtocol.checkPayload(type, in.remaining());
+                        metrics.tcpMessagesReceived.increment();
+                        dispatch(conn, type, in);
+                    } finally {
+                        in.limit(limit);
+                        in.position(end);
+                    }
+                }
+                if (in.remaining() == in.capacity()) {
+                    disconnect(conn, "frame too large");
+                }
+            }
+        } catch (IOException e) {
+            disconnect(conn, e.getMessage());
+        } finally {
+            in.compact();
+        }
+    }
+
+    private void dispatch(TcpConnection conn, int type, ByteBuffer payload) throws IOException {
+        Room room = conn.getRoom();
+        switch (type) {
+            case WireProtocol.MOVE:
+                room.queueMove(conn.getPlayerNumber(), WireProtocol.readMove(payload));
+                break;
+            case WireProtocol.CONTROL:
+                room.handleControl(conn.getPlayerNumber(), WireProtocol.readControl(payload));
+                break;
+            default:
+                throw new WireProtocol.ProtocolException("unexpected frame type " + type);
+        }
+    }
+
+    // ─── Writing ──────────────────────────────────────────────────────────────────
+    private void flush(TcpConnection conn) {
+        if (!conn.open) return;
+        if (conn.evictReason != null) {
+            disconnect(conn, conn.evictReason);
+            return;
+        }
+        try {
+            ByteBuffer buf;
+            while ((buf = conn.out.peek()) != null) {
+                conn.channel.write(buf);
+                if (buf.hasRemaining()) {
+                    // Socket buffer full: wait for OP_WRITE instead of spinning
+                    conn.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                conn.out.poll();
+                conn.queued.decrementAndGet();
+            }
+            conn.key.interestOps(SelectionKey.OP_READ);
+            conn.writeRequested.set(false);
+            // Output queued between the last poll and the flag reset would otherwise be missed
+            if (!conn.out.isEmpty() && conn.writeRequested.compareAndSet(false, true)) {
+                writeRequests.add(conn);
+            }
+        } catch (IOException | CancelledKeyException e) {
+            disconnect(conn, e.getMessage());
+        }
+    }
+
+    // ─── Closing ──────────────────────────────────────────────────────────────────
+    private void disconnect(TcpConnection conn, String reason) {
+        if (!conn.open) return;
+        Room room = conn.getRoom();
+        if (room != null) {
+            EventLog.log("player.disconnected", room.getId(), conn.getPlayerNumber(), reason);
+            registry.leave(room, conn.getPlayerNumber(), conn);
+        }
+        close(conn);
+    }
+
+    private void close(TcpConnection conn) {
+        if (conn.open) connections--;
+        conn.open = false;
+        conn.out.clear();
+        conn.queued.set(0);
+        if (conn.key != null) conn.key.cancel();
+        try { conn.channel.close(); } catch (IOException ex) { }
+    }
+}
@@ -0,0 +1,187 @@
+import java.util.*;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TickScheduler.java
+ *
+ * Steps every match at a fixed timestep from one clock thread and a small pool of
+ * worker threads, instead of one sleeping thread per match.
+ *   - Deadlines come from System.nanoTime() and advance by exactly one period per
+ *     tick, so the rate does not drift with how long a tick took.
+ *   - If the clock thread falls behind (GC pause, overloaded host) it runs up to
+ *     MAX_CATCH_UP ticks back to back; anything beyond that is skipped and counted.
+ *   - Each tick the live tasks are split into small chunks that the clock thread and
+ *     the workers claim until none are left, so one slow room does not hold up the rest.
+ * Tick overruns (a tick that took longer than its period) and skipped ticks are counted,
+ * and every tick's duration is recorded in a Histogram.
+ */
+public class TickScheduler {
+    /** Anything the scheduler can step once per tick. */
+    public interface Tickable {
+        void tick();
+    }
+
+    // Most ticks run back to back when catching up before the backlog is dropped
+    private static final int MAX_CATCH_UP = 5;
+
+    // Tasks claimed per grab by a worker; small enough to balance, big enough to amortise the CAS
+    private static final int CHUNK = 32;
+
+    // Below this many tasks the clock thread runs the tick alone
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    private final Iterable<? extends Tickable> source;
+    private final long periodNanos;
+    private final int  workers;
+    private final int  reportEvery; // ticks between overrun reports (~10 s)
+
+    // Per-tick snapshot of the tasks, reused across ticks
+    private Tickable[] batch = new Tickable[256];
+    private volatile int batchSize;
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    // Start/end barrier shared by the clock thread and the workers
+    private final Phaser phaser;
+    private volatile boolean running = true;
+
+    // Statistics
+    private volatile long tickCount;
+    private volatile long overruns;
+    private volatile long skippedTicks;
+    private volatile long lastTickNanos;
+    private volatile long maxTickNanos;
+    private final Histogram tickTimes = new Histogram();
+    private long reportedOverruns, reportedSkipped;
+
+    /**
+     * @param source   live view of the tasks to step; re-read at the start of every tick
+     * @param tickRate ticks per second
+     * @param workers  extra worker threads (0 = run everything on the clock thread)
+     */
+    public TickScheduler(Iterable<? extends Tickable> source, int tickRate, int workers) {
+        this.source = source;
+        this.periodNanos = 1_000_000_000L / tickRate;
+        this.workers = workers;
+        this.reportEvery = tickRate * 10;
+        this.phaser = new Phaser(workers + 1);
+    }
+
+    /** Start the clock thread and workers. */
+    public void start() {
+        for (int i = 0; i < workers; i++) {
+            Thread t = new Thread(this::workerLoop, "tick-worker-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+        Thread clock = new Thread(this::clockLoop, "tick-clock");
+        clock.start();
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public long getPeriodNanos()   { return periodNanos; }
+    public long getTickCount()     { return tickCount; }
+    public long getOverruns()      { return overruns; }
+    public long getSkippedTicks()  { return skippedTicks; }
+    public long getLastTickNanos() { return lastTickNanos; }
+    public long getMaxTickNanos()  { return maxTickNanos; }
+    public Histogram getTickTimes() { return tickTimes; }
+
+    // ─── Clock thread ─────────────────────────────────────────────────────────────
+    private void clockLoop() {
+        long next = System.nanoTime();
+        while (running) {
+            long now = System.nanoTime();
+            if (now < next) {
+                // parkNanos may return early; the loop re-checks the deadline
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+
+            int steps = 0;
+            while (now >= next && steps < MAX_CATCH_UP) {
+                runTick();
+                next += periodNanos;
+                steps++;
+                now = System.nanoTime();
+            }
+
+            // Still behind after catching up: drop the backlog instead of spiralling
+            if (now >= next) {
+                long behind = (now - next) / periodNanos + 1;
+                skippedTicks += behind;
+                next += behind * periodNanos;
+            }
+        }
+        phaser.forceTermination();
+    }
+
+    private void runTick() {
+        long start = System.nanoTime();
+
+        int n = 0;
+        for (Tickable t : source) {
+            if (n == batch.length) batch = Arrays.copyOf(batch, n * 2);
+            batch[n++] = t;
+        }
+        batchSize = n;
+        cursor.set(0);
+
+        if (workers == 0 || n < PARALLEL_THRESHOLD) {
+            runChunks();
+        } else {
+            phaser.arriveAndAwaitAdvance(); // release workers
+            runChunks();
+            phaser.arriveAndAwaitAdvance(); // wait for them to finish
+        }
+        Arrays.fill(batch, 0, n, null);
+
+        long took = System.nanoTime() - start;
+        lastTickNanos = took;
+        tickTimes.record(took);
+        if (took > maxTickNanos) maxTickNanos = took;
+        if (took > periodNanos) overruns++;
+        tickCount++;
+        if (tickCount % reportEvery == 0) reportOverruns(n);
+    }
+
+    private void reportOverruns(int tasks) {
+        if (overruns == reportedOverruns && skippedTicks == reportedSkipped) return;
+        EventLog.log("tick.overruns", (overruns - reportedOverruns) + " overruns, "
+            + (skippedTicks - reportedSkipped) + " skipped ticks, max tick " + (maxTickNanos / 1000)
+            + " us, " + tasks + " tasks");
+        reportedOverruns = overruns;
+        reportedSkipped = skippedTicks;
+    }
+
+    // ─── Workers ──────────────────────────────────────────────────────────────────
+    private void workerLoop() {
+        while (true) {
+            if (phaser.arriveAndAwaitAdvance() < 0) return; // terminated
+            runChunks();
+            if (phaser.arriveAndAwaitAdvance() < 0) return;
+        }
+    }
+
+    /** Claim chunks of the current batch until none are left. */
+    private void runChunks() {
+        Tickable[] tasks = batch;
+        int size = batchSize;
+        int from;
+        while ((from = cursor.getAndAdd(CHUNK)) < size) {
+            int to = Math.min(size, from + CHUNK);
+            for (int i = from; i < to; i++) {
+                try {
+                    tasks[i].tick();
+                } catch (RuntimeException e) {
+                    // One broken room must not stop every other match
+                    EventLog.log("tick.error", tasks[i] instanceof Room ? ((Room) tasks[i]).getId() : null, 0, null, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.DefaultExtension;
+import org.java_websocket.framing.BinaryFrame;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.TextFrame;
+import org.java_websocket.protocols.IProtocol;
+
+/**
+ * WebSocketFanout.java
+ *
+ * Sends one message to many WebSocket connections while paying for encoding and
+ * framing only once. Server-to-client frames are never masked, so for every plain
+ * RFC 6455 connection (no compression extension) the framed bytes are identical:
+ * {@link #textFrame} builds them once into a read-only buffer and {@link #send}
+ * queues a duplicate of that buffer straight onto each connection's write queue,
+ * exactly as Java-WebSocket does for its own frames.
+ * Connections that negotiated an extension fall back to per-connection framing.
+ */
+public final class WebSocketFanout {
+    // Evictions close sockets and run onClose, which takes the MatchRegistry lock, so the
+    // tick that decides one only hands the connection to this thread
+    private static final ExecutorService EVICTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "ws-evict");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Connections handed to EVICTOR and not yet closed, so repeated calls queue one task each
+    private static final Set<WebSocket> EVICTING = ConcurrentHashMap.newKeySet();
+
+    private WebSocketFanout() { }
+
+    /** Frame payload[0, length) as one final, unmasked text frame. */
+    public static ByteBuffer textFrame(byte[] payload, int length) {
+        return frame(0x81, payload, length);
+    }
+
+    /** Frame payload[0, length) as one final, unmasked binary frame. */
+    public static ByteBuffer binaryFrame(byte[] payload, int length) {
+        return frame(0x82, payload, length);
+    }
+
+    /** Frame the remaining bytes of payload as one final, unmasked binary frame. */
+    public static ByteBuffer binaryFrame(ByteBuffer payload) {
+        return frame(0x82, payload.duplicate());
+    }
+
+    private static ByteBuffer frame(int finAndOpcode, byte[] payload, int length) {
+        return frame(finAndOpcode, ByteBuffer.wrap(payload, 0, length));
+    }
+
+    private static ByteBuffer frame(int finAndOpcode, ByteBuffer payload) {
+        int length = payload.remaining();
+        int header = length < 126 ? 2 : length <= 0xFFFF ? 4 : 10;
+        ByteBuffer buf = ByteBuffer.allocate(header + length);
+        buf.put((byte) finAndOpcode);
+        if (length < 126) {
+            buf.put((byte) length);
+        } else if (length <= 0xFFFF) {
+            buf.put((byte) 126);
+            buf.putShort((short) length);
+        } else {
+            buf.put((byte) 127);
+            buf.putLong(length);
+        }
+        buf.put(payload);
+        buf.flip();
+        return buf.asReadOnlyBuffer();
+    }
+
+    /**
+     * Queue a frame built by textFrame/binaryFrame on one connection. The frame
+     * buffer itself is never consumed, so the same one can go to every subscriber.
+     */
+    public static void send(WebSocket conn, ByteBuffer frame) {
+        if (!conn.isOpen()) return;
+        if (conn instanceof WebSocketImpl && isPlain(conn.getDraft())) {
+            WebSocketImpl impl = (WebSocketImpl) conn;
+            impl.outQueue.add(frame.duplicate());
+            impl.getWebSocketListener().onWriteDemand(impl);
+        } else {
+            conn.sendFrame(unframe(frame));
+        }
+    }
+
+    /** Frames waiting in conn's write queue (0 if the library does not expose it). */
+    public static int queued(WebSocket conn) {
+        return conn instanceof WebSocketImpl ? ((WebSocketImpl) conn).outQueue.size() : 0;
+    }
+
+    /**
+     * Have conn dropped without a close handshake, on the eviction thread; returns at
+     * once. A close frame would only be queued behind the frames a stalled peer is not
+     * reading, and the library closes the socket once its queue drains, so close()
+     * would keep the socket and its backlog until the lost-connection timeout. onClose
+     * runs on the eviction thread. Calling again while an eviction of conn is pending
+     * does nothing; calling again after it ran (the connection somehow still open)
+     * tries again.
+     */
+    public static void evict(WebSocket conn, String reason) {
+        if (!EVICTING.add(conn)) return;
+        EVICTOR.execute(() -> {
+            try {
+                conn.closeConnection(CloseFrame.POLICY_VALIDATION, reason);
+                if (conn instanceof WebSocketImpl) ((WebSocketImpl) conn).outQueue.clear();
+            } catch (RuntimeException e) {
+                EventLog.log("ws.error", null, 0, "eviction failed", e);
+            } finally {
+                EVICTING.remove(conn);
+            }
+        });
+    }
+
+    /** True if conn negotiated binary WireProtocol messages (WireProtocol.WS_SUBPROTOCOL). */
+    public static boolean isBinary(WebSocket conn) {
+        IProtocol protocol = conn.getProtocol();
+        return protocol != null && WireProtocol.WS_SUBPROTOCOL.equals(protocol.getProvidedProtocol());
+    }
+
+    /** Bytes text takes on the wire as UTF-8 (what a text message's payload length counts). */
+    public static int utf8Length(CharSequence text) {
+        int n = text.length();
+        int bytes = n;
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) continue;
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 2;  // 4 bytes for the two chars of the pair
+                i++;
+            } else {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
+    private static boolean isPlain(Draft draft) {
+        return draft instanceof Draft_6455
+            && ((Draft_6455) draft).getExtension().getClass() == DefaultExtension.class;
+    }
+
+    /** Rebuild a library frame from our bytes, for connections that need their own framing. */
+    private static DataFrame unframe(ByteBuffer frame) {
+        ByteBuffer f = frame.duplicate();
+        int len = f.get(1) & 0x7F;
+        int header = len < 126 ? 2 : len == 126 ? 4 : 10;
+        f.position(header);
+        DataFrame data = (f.get(0) & 0x0F) == 0x02 ? new BinaryFrame() : new TextFrame();
+        data.setPayload(f.slice());
+        return data;
+    }
+}
@@ -0,0 +1,317 @@
+import java.nio.ByteBuffer;
+
+/**
+ * WireProtocol.java
+ *
+ * Binary frames exchanged between PongServer and the Java desktop client after
+ * the ENTER_SECRET text handshake. Every frame is
+ *
+ *   u16 length   number of bytes that follow this field
+ *   u8  version  VERSION; a peer receiving any other value drops the connection
+ *   u8  type     STATE, STATE_DELTA, MOVE or CONTROL
+ *   ... payload  fixed layout per type, big-endian
+ *
+ * STATE       (server → client, 22 bytes): i16 ballX, i16 ballY, i16 paddle1Y, i16 paddle2Y,
+ *             i8 ballDX, i8 ballDY, u8 score1, u8 score2, u8 winner,
+ *             u8 flags (bit 0 ready1, bit 1 ready2, bit 2 paused),
+ *             u16 ack1, u16 ackMoved1, u16 ack2, u16 ackMoved2
+ * STATE_DELTA (server → client, 2+ bytes): u16 mask, then only the STATE fields whose
+ *             DELTA_* bit is set, in STATE order and width (DELTA_INPUT1/2 each cover
+ *             an ack + ackMoved pair). Applies to the previous
+ *             frame; the server sends a full STATE (keyframe) periodically and whenever
+ *             a client may have missed a frame.
+ * SEAT        (server → client, 1 byte):  u8 slot (1 or 2) the server seated a TCP client
+ *             in; sent once, before the first STATE
+ * MOVE        (client → server, 3 bytes): i8 direction (−1, 0, 1), u16 seq
+ * CONTROL     (client → server, 1 byte):  u8 ControlCommand.Type ordinal
+ *
+ * Browser clients can speak the same frames over WebSocket by requesting the
+ * WS_SUBPROTOCOL subprotocol. A WebSocket message is already delimited, so there
+ * is no length field: server → client messages are version, type and payload, and
+ * client → server messages are just the type and payload, e.g. a two-byte MOVE
+ * (MOVE, direction) or CONTROL (CONTROL, ordinal). A MOVE may carry its u16 seq too.
+ */
+public final class WireProtocol {
+    public static final int VERSION = 3;
+
+    /** WebSocket subprotocol name for binary messages (see above); JSON otherwise. */
+    public static final String WS_SUBPROTOCOL = "pong.wire.v3";
+
+    // Frame types
+    public static final int STATE       = 0x01;
+    public static final int STATE_DELTA = 0x02;
+    public static final int SEAT        = 0x03;
+    public static final int MOVE        = 0x10;
+    public static final int CONTROL     = 0x11;
+
+    // STATE_DELTA mask bits, one per STATE field in payload order
+    public static final int DELTA_BALL_X  = 1;
+    public static final int DELTA_BALL_Y  = 1 << 1;
+    public static final int DELTA_PADDLE1 = 1 << 2;
+    public static final int DELTA_PADDLE2 = 1 << 3;
+    public static final int DELTA_BALL_DX = 1 << 4;
+    public static final int DELTA_BALL_DY = 1 << 5;
+    public static final int DELTA_SCORE1  = 1 << 6;
+    public static final int DELTA_SCORE2  = 1 << 7;
+    public static final int DELTA_WINNER  = 1 << 8;
+    public static final int DELTA_FLAGS   = 1 << 9;
+    public static final int DELTA_INPUT1  = 1 << 10;
+    public static final int DELTA_INPUT2  = 1 << 11;
+    private static final int DELTA_SHORTS = DELTA_BALL_X | DELTA_BALL_Y | DELTA_PADDLE1 | DELTA_PADDLE2;
+    private static final int DELTA_INPUTS = DELTA_INPUT1 | DELTA_INPUT2;
+
+    /** Length prefix + version + type. */
+    public static final int HEADER_SIZE = 4;
+
+    public static final int STATE_PAYLOAD   = 22;
+    public static final int MOVE_PAYLOAD    = 3;
+    public static final int CONTROL_PAYLOAD = 1;
+    public static final int SEAT_PAYLOAD    = 1;
+
+    public static final int STATE_FRAME_SIZE   = HEADER_SIZE + STATE_PAYLOAD;
+    public static final int MAX_DELTA_FRAME_SIZE = HEADER_SIZE + 2 + STATE_PAYLOAD;
+    public static final int MOVE_FRAME_SIZE    = HEADER_SIZE + MOVE_PAYLOAD;
+    public static final int CONTROL_FRAME_SIZE = HEADER_SIZE + CONTROL_PAYLOAD;
+    public static final int SEAT_FRAME_SIZE    = HEADER_SIZE + SEAT_PAYLOAD;
+
+    // STATE flag bits
+    private static final int FLAG_READY1 = 1;
+    private static final int FLAG_READY2 = 1 << 1;
+    private static final int FLAG_PAUSED = 1 << 2;
+
+    private static final ControlCommand.Type[] CONTROL_TYPES = ControlCommand.Type.values();
+
+    private WireProtocol() { }
+
+    // ─── Writing ──────────────────────────────────────────────────────────────────
+
+    private static void writeHeader(ByteBuffer buf, int type, int payload) {
+        buf.putShort((short) (2 + payload));
+        buf.put((byte) VERSION);
+        buf.put((byte) type);
+    }
+
+    /** Append a STATE frame (STATE_FRAME_SIZE bytes). */
+    public static void writeState(ByteBuffer buf, GameState gs) {
+        writeHeader(buf, STATE, STATE_PAYLOAD);
+        buf.putShort((short) gs.ballX);
+        buf.putShort((short) gs.ballY);
+        buf.putShort((short) gs.paddle1Y);
+        buf.putShort((short) gs.paddle2Y);
+        buf.put((byte) gs.ballDX);
+        buf.put((byte) gs.ballDY);
+        buf.put((byte) gs.score1);
+        buf.put((byte) gs.score2);
+        buf.put((byte) gs.winner);
+        buf.put((byte) flags(gs));
+        buf.putShort((short) gs.ack1);
+        buf.putShort((short) gs.ackMoved1);
+        buf.putShort((short) gs.ack2);
+        buf.putShort((short) gs.ackMoved2);
+    }
+
+    private static int flags(GameState gs) {
+        int flags = 0;
+        if (gs.ready1) flags |= FLAG_READY1;
+        if (gs.ready2) flags |= FLAG_READY2;
+        if (gs.paused) flags |= FLAG_PAUSED;
+        return flags;
+    }
+
+    /** Which STATE fields differ between prev and cur, as DELTA_* bits (0 = nothing changed). */
+    public static int deltaMask(GameState prev, GameState cur) {
+        int mask = 0;
+        if (prev.ballX    != cur.ballX)    mask |= DELTA_BALL_X;
+        if (prev.ballY    != cur.ballY)    mask |= DELTA_BALL_Y;
+        if (prev.paddle1Y != cur.paddle1Y) mask |= DELTA_PADDLE1;
+        if (prev.paddle2Y != cur.paddle2Y) mask |= DELTA_PADDLE2;
+        if (prev.ballDX   != cur.ballDX)   mask |= DELTA_BALL_DX;
+        if (prev.ballDY   != cur.ballDY)   mask |= DELTA_BALL_DY;
+        if (prev.score1   != cur.score1)   mask |= DELTA_SCORE1;
+        if (prev.score2   != cur.score2)   mask |= DELTA_SCORE2;
+        if (prev.winner   != cur.winner)   mask |= DELTA_WINNER;
+        if (flags(prev)   != flags(cur))   mask |= DELTA_FLAGS;
+        if (prev.ack1 != cur.ack1 || prev.ackMoved1 != cur.ackMoved1) mask |= DELTA_INPUT1;
+        if (prev.ack2 != cur.ack2 || prev.ackMoved2 != cur.ackMoved2) mask |= DELTA_INPUT2;
+        return mask;
+    }
+
+    /** Payload size of a STATE_DELTA carrying the fields in mask. */
+    private static int deltaPayload(int mask) {
+        // 2 bytes for the mask, 2 per short field, 1 per byte field, 4 per input ack
+        return 2 + Integer.bitCount(mask) + Integer.bitCount(mask & DELTA_SHORTS)
+                 + 3 * Integer.bitCount(mask & DELTA_INPUTS);
+    }
+
+    /** Size of the STATE_DELTA frame writeStateDelta produces for mask. */
+    public static int deltaFrameSize(int mask) {
+        return HEADER_SIZE + deltaPayload(mask);
+    }
+
+    /** Append a STATE_DELTA frame carrying cur's fields selected by mask. */
+    public static void writeStateDelta(ByteBuffer buf, int mask, GameState cur) {
+        writeHeader(buf, STATE_DELTA, deltaPayload(mask));
+        buf.putShort((short) mask);
+        if ((mask & DELTA_BALL_X)  != 0) buf.putShort((short) cur.ballX);
+        if ((mask & DELTA_BALL_Y)  != 0) buf.putShort((short) cur.ballY);
+        if ((mask & DELTA_PADDLE1) != 0) buf.putShort((short) cur.paddle1Y);
+        if ((mask & DELTA_PADDLE2) != 0) buf.putShort((short) cur.paddle2Y);
+        if ((mask & DELTA_BALL_DX) != 0) buf.put((byte) cur.ballDX);
+        if ((mask & DELTA_BALL_DY) != 0) buf.put((byte) cur.ballDY);
+        if ((mask & DELTA_SCORE1)  != 0) buf.put((byte) cur.score1);
+        if ((mask & DELTA_SCORE2)  != 0) buf.put((byte) cur.score2);
+        if ((mask & DELTA_WINNER)  != 0) buf.put((byte) cur.winner);
+        if ((mask & DELTA_FLAGS)   != 0) buf.put((byte) flags(cur));
+        if ((mask & DELTA_INPUT1)  != 0) { buf.putShort((short) cur.ack1); buf.putShort((short) cur.ackMoved1); }
+        if ((mask & DELTA_INPUT2)  != 0) { buf.putShort((short) cur.ack2); buf.putShort((short) cur.ackMoved2); }
+    }
+
+    /** Append a MOVE frame (MOVE_FRAME_SIZE bytes). */
+    public static void writeMove(ByteBuffer buf, int direction, int seq) {
+        writeHeader(buf, MOVE, MOVE_PAYLOAD);
+        buf.put((byte) direction);
+        buf.putShort((short) seq);
+    }
+
+    /** Append a CONTROL frame (CONTROL_FRAME_SIZE bytes). */
+    public static void writeControl(ByteBuffer buf, ControlCommand.Type type) {
+        writeHeader(buf, CONTROL, CONTROL_PAYLOAD);
+        buf.put((byte) type.ordinal());
+    }
+
+    /** Append a SEAT frame (SEAT_FRAME_SIZE bytes). */
+    public static void writeSeat(ByteBuffer buf, int slot) {
+        writeHeader(buf, SEAT, SEAT_PAYLOAD);
+        buf.put((byte) slot);
+    }
+
+    // ─── Reading ──────────────────────────────────────────────────────────────────
+
+    /**
+     * Size of the complete frame at the buffer's position, or −1 if fewer bytes than
+     * that are available. Does not move the position.
+     */
+    public static int frameSize(ByteBuffer buf) {
+        if (buf.remaining() < 2) return -1;
+        int size = 2 + (buf.getShort(buf.position()) & 0xFFFF);
+        return buf.remaining() >= size ? size : -1;
+    }
+
+    /**
+     * Read the version and type that follow the length field (position must be just
+     * after it). Returns the type, or throws if the peer speaks another version.
+     */
+    public static int readType(ByteBuffer buf) throws ProtocolException {
+        if (buf.remaining() < 2) throw new ProtocolException("truncated frame header");
+        int version = buf.get() & 0xFF;
+        if (version != VERSION) {
+            throw new ProtocolException("unsupported protocol version " + version);
+        }
+        return buf.get() & 0xFF;
+    }
+
+    /** Throw unless a payload of the given length is large enough for its frame type. */
+    public static void checkPayload(int type, int length) throws ProtocolException {
+        int expected;
+        switch (type) {
+            case STATE:       expected = STATE_PAYLOAD;   break;
+            case STATE_DELTA: expected = 2;               break;
+            case MOVE:        expected = MOVE_PAYLOAD;    break;
+            case CONTROL:     expected = CONTROL_PAYLOAD; break;
+            case SEAT:        expected = SEAT_PAYLOAD;    break;
+            default: throw new ProtocolException("unknown frame type " + type);
+        }
+        if (length < expected) {
+            throw new ProtocolException("short frame of type " + type + ": " + length + " bytes");
+        }
+    }
+
+    /** Read a STATE payload into gs. */
+    public static void readState(ByteBuffer buf, GameState gs) {
+        gs.ballX    = buf.getShort();
+        gs.ballY    = buf.getShort();
+        gs.paddle1Y = buf.getShort();
+        gs.paddle2Y = buf.getShort();
+        gs.ballDX   = buf.get();
+        gs.ballDY   = buf.get();
+        gs.score1   = buf.get() & 0xFF;
+        gs.score2   = buf.get() & 0xFF;
+        gs.winner   = buf.get() & 0xFF;
+        setFlags(gs, buf.get() & 0xFF);
+        gs.ack1      = buf.getShort() & 0xFFFF;
+        gs.ackMoved1 = buf.getShort() & 0xFFFF;
+        gs.ack2      = buf.getShort() & 0xFFFF;
+        gs.ackMoved2 = buf.getShort() & 0xFFFF;
+    }
+
+    private static void setFlags(GameState gs, int flags) {
+        gs.ready1 = (flags & FLAG_READY1) != 0;
+        gs.ready2 = (flags & FLAG_READY2) != 0;
+        gs.paused = (flags & FLAG_PAUSED) != 0;
+    }
+
+    /** Apply a STATE_DELTA payload on top of gs, which must hold the previous frame. */
+    public static void readStateDelta(ByteBuffer buf, GameState gs) throws ProtocolException {
+        int mask = buf.getShort() & 0xFFFF;
+        if (buf.remaining() < deltaPayload(mask) - 2) {
+            throw new ProtocolException("short delta frame");
+        }
+        if ((mask & DELTA_BALL_X)  != 0) gs.ballX    = buf.getShort();
+        if ((mask & DELTA_BALL_Y)  != 0) gs.ballY    = buf.getShort();
+        if ((mask & DELTA_PADDLE1) != 0) gs.paddle1Y = buf.getShort();
+        if ((mask & DELTA_PADDLE2) != 0) gs.paddle2Y = buf.getShort();
+        if ((mask & DELTA_BALL_DX) != 0) gs.ballDX   = buf.get();
+        if ((mask & DELTA_BALL_DY) != 0) gs.ballDY   = buf.get();
+        if ((mask & DELTA_SCORE1)  != 0) gs.score1   = buf.get() & 0xFF;
+        if ((mask & DELTA_SCORE2)  != 0) gs.score2   = buf.get() & 0xFF;
+        if ((mask & DELTA_WINNER)  != 0) gs.winner   = buf.get() & 0xFF;
+        if ((mask & DELTA_FLAGS)   != 0) setFlags(gs, buf.get() & 0xFF);
+        if ((mask & DELTA_INPUT1)  != 0) {
+            gs.ack1      = buf.getShort() & 0xFFFF;
+            gs.ackMoved1 = buf.getShort() & 0xFFFF;
+        }
+        if ((mask & DELTA_INPUT2)  != 0) {
+            gs.ack2      = buf.getShort() & 0xFFFF;
+            gs.ackMoved2 = buf.getShort() & 0xFFFF;
+        }
+    }
+
+    /** Read a MOVE payload as a PlayerCommand code, without allocating. */
+    public static int readMove(ByteBuffer buf) {
+        int direction = buf.get();
+        return PlayerCommand.code(direction, buf.getShort());
+    }
+
+    /** Read the MOVE payload of a binary WebSocket message: i8 direction, optionally u16 seq. */
+    public static int readWsMove(ByteBuffer buf) throws ProtocolException {
+        if (buf.remaining() >= MOVE_PAYLOAD) return readMove(buf);
+        if (!buf.hasRemaining()) throw new ProtocolException("empty MOVE");
+        return PlayerCommand.code(buf.get(), 0);
+    }
+
+    /** Read a CONTROL payload. */
+    public static ControlCommand.Type readControl(ByteBuffer buf) throws ProtocolException {
+        if (!buf.hasRemaining()) throw new ProtocolException("empty CONTROL");
+        int ordinal = buf.get() & 0xFF;
+        if (ordinal >= CONTROL_TYPES.length) {
+            throw new ProtocolException("unknown control " + ordinal);
+        }
+        return CONTROL_TYPES[ordinal];
+    }
+
+    /** Read a SEAT payload: the slot, 1 or 2. */
+    public static int readSeat(ByteBuffer buf) throws ProtocolException {
+        int slot = buf.get() & 0xFF;
+        if (slot != 1 && slot != 2) throw new ProtocolException("bad seat " + slot);
+        return slot;
+    }
+
+    /** A peer sent something that is not a valid frame. */
+    public static class ProtocolException extends java.io.IOException {
+        private static final long serialVersionUID = 1L;
+
+        public ProtocolException(String message) {
+            super(message);
+        }
+    }
+}
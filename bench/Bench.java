@@ -0,0 +1,71 @@
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * Bench.java
+ *
+ * Minimal microbenchmark harness for benchmarks that build with plain javac against
+ * the jars in libs/ (the per-tick hot paths have JMH benchmarks in bench/jmh). Runs
+ * each benchmark on the calling thread for a few timed iterations (after warm-up)
+ * and reports, per operation:
+ *   - average time in ns/op,
+ *   - bytes allocated on the benchmark thread in B/op (what JMH's -prof gc
+ *     reports as gc.alloc.rate.norm).
+ * Benchmarks return a value that is folded into {@link #sink} so the JIT cannot
+ * eliminate the work.
+ */
+public final class Bench {
+    /** One benchmarked operation. */
+    public interface Op {
+        long run();
+    }
+
+    private static final int  WARMUP_ITERATIONS  = 5;
+    private static final int  MEASURE_ITERATIONS = 5;
+    private static final long ITERATION_NANOS    = 500_000_000L;
+    private static final int  BATCH              = 1000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /** Results are folded in here so benchmarked work stays observable. */
+    public static volatile long sink;
+
+    private Bench() { }
+
+    /** Run op and print one result line: name, ns/op, B/op. Returns the B/op. */
+    public static double run(String name, Op op) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) iteration(op);
+
+        double nsSum = 0, bytesSum = 0;
+        double nsMin = Double.MAX_VALUE, nsMax = 0;
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            double[] r = iteration(op);
+            nsSum += r[0];
+            bytesSum += r[1];
+            nsMin = Math.min(nsMin, r[0]);
+            nsMax = Math.max(nsMax, r[0]);
+        }
+        System.out.println(String.format(Locale.ROOT, "%-40s %10.1f ns/op  (min %.1f, max %.1f)  %8.1f B/op",
+            name, nsSum / MEASURE_ITERATIONS, nsMin, nsMax, bytesSum / MEASURE_ITERATIONS));
+        return bytesSum / MEASURE_ITERATIONS;
+    }
+
+    /** Returns {ns/op, B/op} for one timed iteration. */
+    private static double[] iteration(Op op) {
+        long tid = Thread.currentThread().getId();
+        long acc = 0;
+        long ops = 0;
+        long bytesBefore = THREADS.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < BATCH; i++) acc += op.run();
+            ops += BATCH;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ITERATION_NANOS);
+        long bytes = THREADS.getThreadAllocatedBytes(tid) - bytesBefore;
+        sink += acc;
+        return new double[] { (double) elapsed / ops, (double) bytes / ops };
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.Random;
+
+/**
+ * PongBatchBenchmark.java
+ *
+ * Ticks MATCHES matches once per operation: as one PongSimulation object per match
+ * (what each Room owns), as a PongBatch stepped by its scalar loop, and as a PongBatch
+ * stepped by the Vector API kernel when this JVM can load it. Finished matches are
+ * restarted so every operation does a full tick's work. Divide ns/op by MATCHES for
+ * the cost of one match-tick.
+ *
+ * Before timing, each batch is run side by side with PongSimulation over many matches
+ * with random inputs and must agree field for field on every tick.
+ *
+ * Usage: java -cp "out:libs/*" PongBatchBenchmark
+ *        java --add-modules jdk.incubator.vector -cp "out:libs/*" PongBatchBenchmark
+ *        (after compiling vector/PongBatchVector.java, see that file)
+ */
+public class PongBatchBenchmark {
+    static final int MATCHES   = 10_000;
+    static final int TICK_RATE = 60;
+
+    public static void main(String[] args) {
+        boolean vector = PongBatch.vectorAvailable();
+        checkSameAsSimulation(2_003, 3_000, false);
+        if (vector) checkSameAsSimulation(2_003, 3_000, true);
+        else System.out.println("Vector API kernel not available; timing the scalar loop only.");
+
+        PlayerCommand[] commands = { PlayerCommand.UP, PlayerCommand.STOP, PlayerCommand.DOWN };
+        Random random = new Random(1);
+
+        PongSimulation[] sims = new PongSimulation[MATCHES];
+        PlayerCommand[] in1 = new PlayerCommand[MATCHES];
+        PlayerCommand[] in2 = new PlayerCommand[MATCHES];
+        PongBatch scalar = new PongBatch(MATCHES, TICK_RATE, false);
+        PongBatch vectorized = new PongBatch(MATCHES, TICK_RATE, true);
+        for (int i = 0; i < MATCHES; i++) {
+            sims[i] = new PongSimulation(TICK_RATE, i);
+            sims[i].serve(2);
+            in1[i] = commands[random.nextInt(3)];
+            in2[i] = commands[random.nextInt(3)];
+            for (PongBatch batch : new PongBatch[] { scalar, vectorized }) {
+                batch.add(i);
+                batch.setInput(i, in1[i].direction, in2[i].direction);
+            }
+        }
+
+        Bench.run("10k matches: PongSimulation objects", () -> {
+            long over = 0;
+            for (int i = 0; i < MATCHES; i++) {
+                PongSimulation sim = sims[i];
+                if (sim.state().winner != 0) {
+                    sim.newMatch(sim.getSeed() + 1);
+                    sim.serve(2);
+                    over++;
+                }
+                sim.step(in1[i], in2[i]);
+            }
+            return over;
+        });
+        Bench.run("10k matches: PongBatch, scalar", () -> tick(scalar, in1, in2));
+        if (vector) Bench.run("10k matches: PongBatch, vector", () -> tick(vectorized, in1, in2));
+    }
+
+    private static long tick(PongBatch batch, PlayerCommand[] in1, PlayerCommand[] in2) {
+        long over = 0;
+        for (int i = 0; i < MATCHES; i++) {
+            if (batch.winner[i] != 0) {
+                batch.newMatch(i, batch.seed[i] + 1);
+                batch.setInput(i, in1[i].direction, in2[i].direction);
+                over++;
+            }
+        }
+        batch.step();
+        return over;
+    }
+
+    /** Run n matches both ways for the given ticks and fail on the first difference. */
+    static void checkSameAsSimulation(int n, int ticks, boolean vectorize) {
+        Random random = new Random(42);
+        PongSimulation[] sims = new PongSimulation[n];
+        PongBatch batch = new PongBatch(n, TICK_RATE, vectorize);
+        for (int i = 0; i < n; i++) {
+            long seed = random.nextLong();
+            sims[i] = new PongSimulation(TICK_RATE, seed);
+            sims[i].serve(2);
+            batch.add(seed);
+        }
+        GameState fromBatch = new GameState();
+        for (int t = 0; t < ticks; t++) {
+            for (int i = 0; i < n; i++) {
+                GameState expected = sims[i].state();
+                if (expected.winner != 0) {
+                    long seed = random.nextLong();
+                    sims[i].newMatch(seed);
+                    sims[i].serve(2);
+                    batch.newMatch(i, seed);
+                }
+                int dir1 = random.nextInt(3) - 1;
+                int dir2 = random.nextInt(3) - 1;
+                sims[i].step(PlayerCommand.of(dir1), PlayerCommand.of(dir2));
+                batch.setInput(i, dir1, dir2);
+            }
+            batch.step();
+            for (int i = 0; i < n; i++) {
+                GameState expected = sims[i].state();
+                batch.copyTo(i, fromBatch);
+                if (expected.ballX != fromBatch.ballX || expected.ballY != fromBatch.ballY
+                        || expected.ballDX != fromBatch.ballDX || expected.ballDY != fromBatch.ballDY
+                        || expected.paddle1Y != fromBatch.paddle1Y || expected.paddle2Y != fromBatch.paddle2Y
+                        || expected.score1 != fromBatch.score1 || expected.score2 != fromBatch.score2
+                        || expected.winner != fromBatch.winner) {
+                    throw new AssertionError((vectorize ? "Vectorized " : "Scalar ")
+                            + "PongBatch differs from PongSimulation: match " + i + ", tick " + t);
+                }
+            }
+        }
+    }
+}
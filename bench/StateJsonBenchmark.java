@@ -0,0 +1,60 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * StateJsonBenchmark.java
+ *
+ * Compares the old String.format STATE message (as broadcastStateToAll built it)
+ * with StateJsonEncoder. Both variants produce the bytes handed to the WebSocket
+ * library, so the String path includes its UTF-8 encoding.
+ *
+ * Usage: java -cp "out:libs/*" StateJsonBenchmark
+ */
+public class StateJsonBenchmark {
+    public static void main(String[] args) {
+        GameState gs = new GameState();
+        gs.paddle1Y = 260; gs.paddle2Y = 415;
+        gs.ballX = 393;    gs.ballY = 302;
+        gs.score1 = 3;     gs.score2 = 4;
+        gs.ready1 = true;  gs.ready2 = true;
+
+        StateJsonEncoder encoder = new StateJsonEncoder();
+        encoder.encode(gs);
+        String expected = new String(encoder.array(), 0, encoder.length(), StandardCharsets.US_ASCII);
+        if (!expected.equals(formatState(gs))) {
+            throw new AssertionError("encoder output differs from String.format:\n" + expected + "\n" + formatState(gs));
+        }
+
+        Bench.run("state json: String.format + getBytes", () -> {
+            gs.ballX = (gs.ballX + 1) & 511;
+            return formatState(gs).getBytes(StandardCharsets.UTF_8).length;
+        });
+        Bench.run("state json: StateJsonEncoder", () -> {
+            gs.ballX = (gs.ballX + 1) & 511;
+            return encoder.encode(gs);
+        });
+    }
+
+    /** The STATE message exactly as PongServer used to format it. */
+    static String formatState(GameState state) {
+        return String.format(
+          "{"
+        +   "\"type\":\"STATE\","
+        +   "\"p1Y\":%d,\"p2Y\":%d,"
+        +   "\"ballX\":%d,\"ballY\":%d,"
+        +   "\"score1\":%d,\"score2\":%d,"
+        +   "\"paused\":%b,\"winner\":%d,"
+        +   "\"ready1\":%b,\"ready2\":%b"
+        +   "}",
+          state.paddle1Y,
+          state.paddle2Y,
+          state.ballX,
+          state.ballY,
+          state.score1,
+          state.score2,
+          state.paused,
+          state.winner,
+          state.ready1,
+          state.ready2
+        );
+    }
+}
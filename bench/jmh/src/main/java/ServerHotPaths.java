@@ -0,0 +1,136 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import pong.bench.HotPaths;
+
+/**
+ * ServerHotPaths.java
+ *
+ * The server side of pong.bench.HotPathBenchmarks (see HotPaths for why it is
+ * split). Holds a match in play, paddles moving and the ball bouncing, restarted
+ * whenever it is won. Every state operation advances the match first, so each frame
+ * carries new values and every delta has something in it.
+ */
+public final class ServerHotPaths implements HotPaths {
+    private static final int UP   = PlayerCommand.UP.code();
+    private static final int DOWN = PlayerCommand.DOWN.code();
+    private static final String[] MOVES = {
+        "{\"type\":\"MOVE\",\"dir\":-1}", "{\"type\":\"MOVE\",\"dir\":0}", "{\"type\":\"MOVE\",\"dir\":1}"
+    };
+
+    private final PongSimulation sim = new PongSimulation(60, 1);
+    private final GameState gs = sim.state();
+    private final GameState lastSent = new GameState();
+    private long ticks;
+
+    private final StateJsonEncoder json = new StateJsonEncoder();
+    private final ByteBuffer wire = ByteBuffer.allocate(WireProtocol.MAX_DELTA_FRAME_SIZE);
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+    private final ObjectOutputStream out;
+    private final ClientJsonDecoder decoder = new ClientJsonDecoder();
+    private int move;
+
+    public ServerHotPaths() throws IOException {
+        sim.serve(2);
+        gs.ready1 = gs.ready2 = true;
+        out = new ObjectOutputStream(bytes);
+    }
+
+    @Override
+    public long tick() {
+        if (gs.winner != 0) sim.newMatch(sim.getSeed());
+        long t = ticks++;
+        sim.step((t & 64) == 0 ? UP : DOWN, (t & 128) == 0 ? DOWN : UP);
+        return gs.ballX + gs.paddle1Y;
+    }
+
+    // ─── Broadcast ────────────────────────────────────────────────────────────────
+
+    @Override
+    public long stateStringFormat() {
+        tick();
+        return StateJsonBenchmark.formatState(gs).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    @Override
+    public long stateJsonKeyframe() {
+        tick();
+        json.encode(gs);
+        return WebSocketFanout.textFrame(json.array(), json.length()).remaining();
+    }
+
+    @Override
+    public long stateJsonDelta() {
+        lastSent.copyFrom(gs);
+        tick();
+        if (json.encodeDelta(lastSent, gs) == 0) return 0;
+        return WebSocketFanout.textFrame(json.array(), json.length()).remaining();
+    }
+
+    @Override
+    public long stateBinary() {
+        tick();
+        wire.clear();
+        WireProtocol.writeState(wire, gs);
+        return wire.position();
+    }
+
+    @Override
+    public long stateBinaryDelta() {
+        lastSent.copyFrom(gs);
+        tick();
+        wire.clear();
+        int mask = WireProtocol.deltaMask(lastSent, gs);
+        if (mask != 0) WireProtocol.writeStateDelta(wire, mask, gs);
+        return wire.position();
+    }
+
+    // ─── GameState serialization ──────────────────────────────────────────────────
+
+    @Override
+    public long gameStateObjectStream() {
+        gs.ballX = (gs.ballX + 1) & 511;
+        bytes.reset();
+        try {
+            out.reset();
+            out.writeObject(gs);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.size();
+    }
+
+    @Override
+    public long gameStateWireProtocol() {
+        gs.ballX = (gs.ballX + 1) & 511;
+        wire.clear();
+        WireProtocol.writeState(wire, gs);
+        return wire.position();
+    }
+
+    // ─── Input ────────────────────────────────────────────────────────────────────
+
+    @Override
+    public long moveGson() {
+        JsonObject obj = JsonParser.parseString(nextMove()).getAsJsonObject();
+        return "MOVE".equals(obj.get("type").getAsString()) ? obj.get("dir").getAsInt() : 0;
+    }
+
+    @Override
+    public long moveClientJsonDecoder() {
+        return decoder.decode(nextMove()) == ClientJsonDecoder.MOVE ? decoder.dir : 0;
+    }
+
+    private String nextMove() {
+        if (++move == MOVES.length) move = 0;
+        return MOVES[move];
+    }
+}
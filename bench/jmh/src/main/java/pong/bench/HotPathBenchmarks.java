@@ -0,0 +1,93 @@
+package pong.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * HotPathBenchmarks.java
+ *
+ * JMH benchmarks for the server's per-tick hot paths, old and new side by side:
+ *   - tick:      one PongSimulation step
+ *   - state*:    the STATE message a feed builds per send, as String.format used to
+ *                and as StateJsonEncoder / WireProtocol build it now
+ *   - gameState: ObjectOutputStream serialization against WireProtocol.writeState
+ *   - move*:     a WebSocket MOVE message through Gson and through ClientJsonDecoder
+ * Every benchmark runs in a forked JVM of its own and reports throughput; run with
+ * -prof gc for the allocation rate (gc.alloc.rate.norm is bytes per operation).
+ *
+ * Usage: java -jar target/benchmarks.jar -prof gc  (see pom.xml)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HotPathBenchmarks {
+    private HotPaths paths;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        paths = (HotPaths) Class.forName("ServerHotPaths").getDeclaredConstructor().newInstance();
+    }
+
+    @Benchmark
+    public long tick() {
+        return paths.tick();
+    }
+
+    @Benchmark
+    public long stateStringFormat() {
+        return paths.stateStringFormat();
+    }
+
+    @Benchmark
+    public long stateJsonKeyframe() {
+        return paths.stateJsonKeyframe();
+    }
+
+    @Benchmark
+    public long stateJsonDelta() {
+        return paths.stateJsonDelta();
+    }
+
+    @Benchmark
+    public long stateBinary() {
+        return paths.stateBinary();
+    }
+
+    @Benchmark
+    public long stateBinaryDelta() {
+        return paths.stateBinaryDelta();
+    }
+
+    @Benchmark
+    public long gameStateObjectStream() {
+        return paths.gameStateObjectStream();
+    }
+
+    @Benchmark
+    public long gameStateWireProtocol() {
+        return paths.gameStateWireProtocol();
+    }
+
+    @Benchmark
+    public long moveGson() {
+        return paths.moveGson();
+    }
+
+    @Benchmark
+    public long moveClientJsonDecoder() {
+        return paths.moveClientJsonDecoder();
+    }
+}
@@ -0,0 +1,42 @@
+package pong.bench;
+
+/**
+ * HotPaths.java
+ *
+ * One operation of each per-tick hot path, as benchmarked by HotPathBenchmarks.
+ * JMH only generates benchmarks for classes in a named package, and a named package
+ * cannot refer to the server's classes in the default package, so the server side is
+ * the default-package ServerHotPaths, loaded by name. Each method returns something
+ * derived from its result for JMH to consume.
+ */
+public interface HotPaths {
+    /** One PongSimulation step (what updateGame used to do). */
+    long tick();
+
+    /** STATE message as broadcastStateToAll used to build it: String.format, then UTF-8. */
+    long stateStringFormat();
+
+    /** STATE keyframe through StateJsonEncoder, plus its WebSocket frame. */
+    long stateJsonKeyframe();
+
+    /** STATE delta through StateJsonEncoder, plus its WebSocket frame. */
+    long stateJsonDelta();
+
+    /** Binary STATE frame. */
+    long stateBinary();
+
+    /** Binary STATE_DELTA frame. */
+    long stateBinaryDelta();
+
+    /** GameState through ObjectOutputStream, as the TCP path used to send it. */
+    long gameStateObjectStream();
+
+    /** GameState through WireProtocol.writeState. */
+    long gameStateWireProtocol();
+
+    /** WebSocket MOVE message parsed into a Gson tree, as onMessage used to. */
+    long moveGson();
+
+    /** WebSocket MOVE message through ClientJsonDecoder. */
+    long moveClientJsonDecoder();
+}
@@ -0,0 +1,148 @@
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * InputAllocationCheck.java
+ *
+ * Checks that the server's input path creates no garbage per message. Each path
+ * handles one input message the way TcpServer, PongServer and Room do:
+ *   - MOVE frame:    frame header, PlayerCommand code, InputQueue, one PongSimulation step
+ *   - CONTROL frame: frame header and ControlCommand type
+ *   - WebSocket MOVE / CONTROL JSON: ClientJsonDecoder (the text itself is decoded
+ *     from the WebSocket frame by the library, before onMessage)
+ * Every path is warmed up, then run INPUTS times while the JVM counts the bytes this
+ * thread allocates. Exits 1 if any path allocated more than MAX_BYTES in total: a
+ * single 16-byte object per message would be 16 MB. The Gson tree parse the server
+ * used before is measured too, for comparison only.
+ *
+ * Usage: java -cp "out:libs/*" InputAllocationCheck
+ */
+public final class InputAllocationCheck {
+    private static final int WARMUP_INPUTS = 200_000;
+    private static final int INPUTS = 1_000_000;
+
+    // Allowance for the measurement itself; far below one byte per thousand inputs
+    private static final long MAX_BYTES = 1024;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /** One input message handled; returns something derived from it, for the sink. */
+    private interface Input {
+        int handle();
+    }
+
+    // Results are folded in here so the handled inputs stay observable
+    private static volatile long sink;
+
+    private static boolean passed = true;
+
+    private InputAllocationCheck() { }
+
+    public static void main(String[] args) {
+        ByteBuffer[] moves = new ByteBuffer[4];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = ByteBuffer.allocate(WireProtocol.MOVE_FRAME_SIZE);
+            WireProtocol.writeMove(moves[i], i % 3 - 1, 100 + i);
+        }
+        ByteBuffer control = ByteBuffer.allocate(WireProtocol.CONTROL_FRAME_SIZE);
+        WireProtocol.writeControl(control, ControlCommand.Type.PAUSE);
+
+        InputQueue queue = new InputQueue();
+        PongSimulation sim = new PongSimulation(60, 1);
+        sim.serve(2);
+        int[] cmd = { PlayerCommand.STOP.code() };
+        long[] n = { 0 };
+
+        check("MOVE frame -> queue -> step", () -> {
+            ByteBuffer frame = moves[(int) (n[0]++ & 3)];
+            frame.clear();
+            try {
+                int type = readHeader(frame);
+                queue.offer(WireProtocol.readMove(frame));
+                int next = queue.poll();
+                if (next != InputQueue.NONE) cmd[0] = next;
+                if (sim.state().winner != 0) nextMatch(sim);
+                sim.step(cmd[0], PlayerCommand.STOP.code());
+                return type + sim.state().paddle1Y;
+            } catch (WireProtocol.ProtocolException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        check("CONTROL frame -> type", () -> {
+            control.clear();
+            try {
+                readHeader(control);
+                return ControlCommand.of(WireProtocol.readControl(control)).type.ordinal();
+            } catch (WireProtocol.ProtocolException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        ClientJsonDecoder decoder = new ClientJsonDecoder();
+        String[] wsMoves = { "{\"type\":\"MOVE\",\"dir\":-1}", "{\"type\":\"MOVE\",\"dir\":0}" };
+        String wsControl = "{\"type\":\"CONTROL\",\"action\":\"PAUSE\"}";
+        check("WebSocket MOVE JSON -> queue", () -> {
+            if (decoder.decode(wsMoves[(int) (n[0]++ & 1)]) != ClientJsonDecoder.MOVE) throw new IllegalStateException();
+            queue.offer(PlayerCommand.code(decoder.dir, 0));
+            return queue.poll();
+        });
+        check("WebSocket CONTROL JSON -> type", () -> {
+            decoder.decode(wsControl);
+            return decoder.control.ordinal();
+        });
+        report("WebSocket MOVE JSON, Gson tree (old)", measure(() -> {
+            JsonObject obj = JsonParser.parseString(wsMoves[(int) (n[0]++ & 1)]).getAsJsonObject();
+            return "MOVE".equals(obj.get("type").getAsString()) ? obj.get("dir").getAsInt() : 0;
+        }), "for comparison");
+
+        System.out.println(passed ? "PASS" : "FAIL");
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static void check(String name, Input input) {
+        long bytes = measure(input);
+        boolean ok = bytes <= MAX_BYTES;
+        passed &= ok;
+        report(name, bytes, ok ? "ok" : "ALLOCATES");
+    }
+
+    /** Bytes this thread allocated handling INPUTS inputs, after a warm-up. */
+    private static long measure(Input input) {
+        long acc = 0;
+        for (int i = 0; i < WARMUP_INPUTS; i++) acc += input.handle();
+        long tid = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < INPUTS; i++) acc += input.handle();
+        long bytes = THREADS.getThreadAllocatedBytes(tid) - before;
+        sink += acc;
+        return bytes;
+    }
+
+    private static void report(String name, long bytes, String verdict) {
+        System.out.println(String.format(Locale.ROOT, "%-40s %,14d B per %,d inputs (%.3f B/input)  %s",
+            name, bytes, INPUTS, (double) bytes / INPUTS, verdict));
+    }
+
+    /** TcpServer.read's framing: skip the length, read and check version and type. */
+    private static int readHeader(ByteBuffer frame) throws WireProtocol.ProtocolException {
+        frame.position(2);
+        int type = WireProtocol.readType(frame);
+        WireProtocol.checkPayload(type, frame.remaining());
+        return type;
+    }
+
+    /**
+     * Start the next match in place. PongSimulation.newMatch creates the match's random
+     * generator, once per match rather than per input, so it stays out of the count.
+     */
+    private static void nextMatch(PongSimulation sim) {
+        GameState s = sim.state();
+        s.score1 = s.score2 = s.winner = 0;
+        sim.serve(2);
+    }
+}
@@ -0,0 +1,275 @@
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SlowClientCheck.java
+ *
+ * Checks end to end that the server drops players who stop reading. Starts
+ * PongServer in a child JVM and seats two rooms, each with one client that reads
+ * every frame and one that keeps writing but never reads again: a WebSocket (JSON)
+ * client in one room, a TCP client in the other. All four click RESTART and READY
+ * in a loop so both rooms keep playing and sending state. The check passes once the
+ * server's metrics show both stalled clients evicted while the reading ones are
+ * still connected, and the stalled sockets turn out to be closed. Exits 1 if that
+ * has not happened within DEADLINE_SECONDS.
+ *
+ * Uses the server's fixed ports (12345, 8080) and the metrics port 9100, so no other
+ * server may be running.
+ */
+public final class SlowClientCheck {
+    private static final String SECRET = "slow-client-check";
+    private static final String HOST = "127.0.0.1";
+    private static final int    METRICS_PORT = 9100;
+    private static final int    DEADLINE_SECONDS = 60;
+
+    // RESTART then READY this often keeps a match going (or starts the next one)
+    private static final long CYCLE_MILLIS = 1000;
+    private static final long READY_AFTER_MILLIS = 300;
+
+    private SlowClientCheck() { }
+
+    public static void main(String[] args) throws Exception {
+        Process server = startServer();
+        int status = 1;
+        try {
+            status = run() ? 0 : 1;
+        } finally {
+            server.destroy();
+            server.waitFor(5, TimeUnit.SECONDS);
+        }
+        System.out.println(status == 0 ? "PASS" : "FAIL");
+        System.exit(status);
+    }
+
+    private static boolean run() throws Exception {
+        // Room "slow-ws": a stalled WebSocket in slot 1, a reading TCP client in slot 2
+        Socket slowWs = stalledWebSocket("slow-ws");
+        Socket reader1 = readingTcp();
+        // A new room: a stalled TCP client in slot 1, a reading TCP client in slot 2
+        Socket slowTcp = stalledTcp();
+        Socket reader2 = readingTcp();
+        System.out.println("seated 4 clients in 2 rooms; 2 have stopped reading");
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(DEADLINE_SECONDS);
+        while (System.nanoTime() < deadline) {
+            control(ControlCommand.Type.RESTART, slowWs, reader1, slowTcp, reader2);
+            Thread.sleep(READY_AFTER_MILLIS);
+            control(ControlCommand.Type.READY, slowWs, reader1, slowTcp, reader2);
+            Thread.sleep(CYCLE_MILLIS - READY_AFTER_MILLIS);
+
+            String metrics = scrape();
+            long wsEvicted  = value(metrics, "pong_clients_evicted_total{protocol=\"ws\"}");
+            long tcpEvicted = value(metrics, "pong_clients_evicted_total{protocol=\"tcp\"}");
+            long wsOpen     = value(metrics, "pong_sessions{protocol=\"ws\"}");
+            long tcpOpen    = value(metrics, "pong_sessions{protocol=\"tcp\"}");
+            long seconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+            System.out.printf("[%3ds] evicted ws=%d tcp=%d, open ws=%d tcp=%d, skipped ws=%d tcp=%d%n",
+                seconds, wsEvicted, tcpEvicted, wsOpen, tcpOpen,
+                value(metrics, "pong_frames_skipped_total{protocol=\"ws\"}"),
+                value(metrics, "pong_frames_skipped_total{protocol=\"tcp\"}"));
+            if (wsEvicted == 1 && tcpEvicted == 1 && wsOpen == 0 && tcpOpen == 2) {
+                return isClosed(slowWs, "websocket") & isClosed(slowTcp, "tcp");
+            }
+        }
+        System.out.println("stalled clients still connected after " + DEADLINE_SECONDS + " s");
+        return false;
+    }
+
+    // ─── Server ───────────────────────────────────────────────────────────────────
+
+    private static Process startServer() throws Exception {
+        ProcessBuilder pb = new ProcessBuilder(
+            System.getProperty("java.home") + "/bin/java", "-cp", System.getProperty("java.class.path"), "PongServer");
+        pb.environment().put("PONG_SECRET", SECRET);
+        pb.environment().put("PONG_METRICS_PORT", String.valueOf(METRICS_PORT));
+        pb.redirectErrorStream(true);
+        Process server = pb.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::destroy));
+
+        // Wait for the last startup line; then only echo evictions and errors
+        CountDownLatch up = new CountDownLatch(1);
+        Thread log = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith(">> Metrics")) up.countDown();
+                    if (line.contains("evicted") || line.contains("error") || line.contains("Exception")) {
+                        System.out.println("  server: " + line);
+                    }
+                }
+            } catch (IOException e) { }
+        }, "server-log");
+        log.setDaemon(true);
+        log.start();
+        if (!up.await(20, TimeUnit.SECONDS)) throw new IllegalStateException("server did not start");
+        return server;
+    }
+
+    private static String scrape() throws IOException {
+        URLConnection c = new URL("http://" + HOST + ":" + METRICS_PORT + "/metrics").openConnection();
+        try (InputStream in = c.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static long value(String metrics, String series) {
+        for (String line : metrics.split("\n")) {
+            if (line.startsWith(series + " ")) return (long) Double.parseDouble(line.substring(series.length() + 1));
+        }
+        return -1;
+    }
+
+    // ─── Clients ──────────────────────────────────────────────────────────────────
+
+    /** A TCP client that reads (and discards) everything on a thread of its own. */
+    private static Socket readingTcp() throws Exception {
+        Socket s = tcp(false);
+        CountDownLatch seated = new CountDownLatch(1);
+        Thread t = new Thread(() -> {
+            byte[] buf = new byte[4096];
+            try {
+                InputStream in = s.getInputStream();
+                while (in.read(buf) > 0) seated.countDown();
+            } catch (IOException e) { }
+        }, "reader");
+        t.setDaemon(true);
+        t.start();
+        if (!seated.await(5, TimeUnit.SECONDS)) throw new IllegalStateException("reading client got no state");
+        return s;
+    }
+
+    /** A TCP client that stops reading once seated. */
+    private static Socket stalledTcp() throws Exception {
+        Socket s = tcp(true);
+        readFully(s.getInputStream(), 2);  // the first frame's length: seated
+        return s;
+    }
+
+    private static Socket tcp(boolean small) throws IOException {
+        Socket s = new Socket();
+        if (small) s.setReceiveBufferSize(1024);
+        s.connect(new InetSocketAddress(HOST, PongServer.TCP_PORT));
+        InputStream in = s.getInputStream();
+        while (in.read() != '\n') { }  // ENTER_SECRET
+        s.getOutputStream().write((SECRET + "\n").getBytes(StandardCharsets.UTF_8));
+        write(s, ControlCommand.Type.READY);
+        return s;
+    }
+
+    /** A WebSocket client (JSON messages) seated in room, which then stops reading. */
+    private static Socket stalledWebSocket(String room) throws Exception {
+        Socket s = new Socket();
+        s.setReceiveBufferSize(1024);
+        s.connect(new InetSocketAddress(HOST, PongServer.WS_PORT));
+        byte[] key = new byte[16];
+        ThreadLocalRandom.current().nextBytes(key);
+        String request = "GET / HTTP/1.1\r\nHost: " + HOST + "\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+            + "Sec-WebSocket-Key: " + Base64.getEncoder().encodeToString(key) + "\r\nSec-WebSocket-Version: 13\r\n\r\n";
+        s.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+        InputStream in = s.getInputStream();
+        int last4 = 0;
+        while (last4 != 0x0D0A0D0A) {  // skip the 101 response up to its blank line
+            int c = in.read();
+            if (c < 0) throw new EOFException("handshake");
+            last4 = last4 << 8 | c;
+        }
+        expectText(in, "ENTER_SECRET");
+        sendText(s, SECRET);
+        expectText(in, "OK");
+        sendText(s, "{\"action\":\"CHOOSE_PLAYER\",\"p\":1,\"room\":\"" + room + "\"}");
+        readFrame(in);  // the first state message: seated
+        return s;
+    }
+
+    private static void control(ControlCommand.Type type, Socket ws, Socket... tcp) {
+        try {
+            sendText(ws, "{\"type\":\"CONTROL\",\"action\":\"" + type + "\"}");
+        } catch (IOException e) { }  // evicted
+        for (Socket s : tcp) {
+            try {
+                write(s, type);
+            } catch (IOException e) { }
+        }
+    }
+
+    private static void write(Socket s, ControlCommand.Type type) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(WireProtocol.CONTROL_FRAME_SIZE);
+        WireProtocol.writeControl(b, type);
+        s.getOutputStream().write(b.array());
+    }
+
+    // Client frames are masked; payloads here are always under 126 bytes
+    private static void sendText(Socket s, String text) throws IOException {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        byte[] mask = new byte[4];
+        ThreadLocalRandom.current().nextBytes(mask);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(6 + payload.length);
+        frame.write(0x81);
+        frame.write(0x80 | payload.length);
+        frame.write(mask, 0, 4);
+        for (int i = 0; i < payload.length; i++) frame.write(payload[i] ^ mask[i % 4]);
+        s.getOutputStream().write(frame.toByteArray());
+    }
+
+    private static void expectText(InputStream in, String text) throws IOException {
+        String got = new String(readFrame(in), StandardCharsets.UTF_8);
+        if (!got.equals(text)) throw new IOException("expected " + text + ", got " + got);
+    }
+
+    private static byte[] readFrame(InputStream in) throws IOException {
+        byte[] header = readFully(in, 2);
+        int len = header[1] & 0x7F;
+        if (len == 126) {
+            byte[] ext = readFully(in, 2);
+            len = (ext[0] & 0xFF) << 8 | (ext[1] & 0xFF);
+        }
+        return readFully(in, len);
+    }
+
+    private static byte[] readFully(InputStream in, int n) throws IOException {
+        byte[] b = new byte[n];
+        for (int off = 0; off < n; ) {
+            int r = in.read(b, off, n - off);
+            if (r < 0) throw new EOFException();
+            off += r;
+        }
+        return b;
+    }
+
+    /**
+     * True if the server has closed s: whatever it had already sent drains, then the
+     * stream ends or is reset. A socket still receiving new frames after that is open.
+     */
+    private static boolean isClosed(Socket s, String name) throws IOException {
+        s.setSoTimeout(2000);
+        byte[] buf = new byte[8192];
+        long drained = 0;
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        try {
+            int r;
+            while ((r = s.getInputStream().read(buf)) > 0) {
+                drained += r;
+                if (System.nanoTime() > until) break;
+            }
+            if (r < 0) {
+                System.out.println(name + " client: closed by the server after " + drained + " buffered bytes");
+                return true;
+            }
+        } catch (SocketTimeoutException e) {
+            System.out.println(name + " client: no data and no close after " + drained + " bytes");
+            return false;
+        } catch (IOException e) {
+            System.out.println(name + " client: " + e.getMessage() + " after " + drained + " buffered bytes");
+            return true;
+        }
+        System.out.println(name + " client: still receiving state");
+        return false;
+    }
+}
@@ -12,6 +12,14 @@ let ws;
 let authenticated = false;
 let playerNumber  = null;
 let gameState     = null;
+// Optional room name from the page URL (?room=name); without it the server matches us into any open room
+const roomName    = new URLSearchParams(window.location.search).get('room');
+// Optional ?rate=<Hz>: ask the server for fewer state messages (e.g. 20 on a slow mobile link)
+const sendRate    = parseInt(new URLSearchParams(window.location.search).get('rate'), 10) || 0;
+// Binary WireProtocol messages unless the page is opened with ?json=1
+const WIRE_SUBPROTOCOL = 'pong.wire.v3';
+const useJson     = new URLSearchParams(window.location.search).get('json') === '1';
+let binary        = false;  // true once the server has accepted WIRE_SUBPROTOCOL
 
 // ─── 3) DOM References ─────────────────────────────────────────────────────────
 const canvas      = document.getElementById('gameCanvas');
@@ -49,13 +57,23 @@ resizeCanvas();
 // ─── 5) WebSocket Connection Logic ─────────────────────────────────────────────
 function connectWebSocket() {
   console.log('Opening WebSocket to wss://pong-online.site/ws/');
-  ws = new WebSocket("wss://pong-online.site/ws/");
+  ws = useJson
+    ? new WebSocket("wss://pong-online.site/ws/")
+    : new WebSocket("wss://pong-online.site/ws/", [ WIRE_SUBPROTOCOL ]);
+  ws.binaryType = 'arraybuffer';
 
   ws.onopen = () => {
-    console.log(`WebSocket opened. Waiting for server prompt...`);
+    binary = ws.protocol === WIRE_SUBPROTOCOL;
+    console.log(`WebSocket opened (${binary ? 'binary' : 'JSON'}). Waiting for server prompt...`);
   };
 
   ws.onmessage = (evt) => {
+    // Binary STATE / STATE_DELTA frames
+    if (evt.data instanceof ArrayBuffer) {
+      if (authenticated) readWireState(new DataView(evt.data));
+      return;
+    }
+
     const msg = evt.data.trim();
     console.log('Received WebSocket message:', msg);
 
@@ -84,6 +102,9 @@ function connectWebSocket() {
       const obj = JSON.parse(msg);
       if (obj.type === 'STATE') {
         gameState = obj;
+      } else if (obj.type === 'DELTA' && gameState) {
+        // Only the fields that changed since the previous message
+        Object.assign(gameState, obj);
       }
     } catch (e) {
       console.warn('WebSocket message was not JSON:', msg);
@@ -105,6 +126,45 @@ function connectWebSocket() {
   };
 }
 
+// Apply one binary message: u8 version, u8 type, then the WireProtocol payload (big-endian)
+const WIRE_VERSION = 3;
+const WIRE_STATE   = 0x01;
+const WIRE_DELTA   = 0x02;
+
+function readWireState(view) {
+  if (view.byteLength < 2 || view.getUint8(0) !== WIRE_VERSION) {
+    console.warn('Unexpected binary message');
+    return;
+  }
+  const type = view.getUint8(1);
+  if (type === WIRE_STATE) {
+    gameState = { type: 'STATE' };
+    readWireFields(view, 2, 0x3FF);
+  } else if (type === WIRE_DELTA && gameState) {
+    readWireFields(view, 4, view.getUint16(2));
+  }
+}
+
+// Read the fields selected by mask, in WireProtocol order, into gameState
+function readWireFields(view, off, mask) {
+  if (mask & (1 << 0)) { gameState.ballX  = view.getInt16(off); off += 2; }
+  if (mask & (1 << 1)) { gameState.ballY  = view.getInt16(off); off += 2; }
+  if (mask & (1 << 2)) { gameState.p1Y    = view.getInt16(off); off += 2; }
+  if (mask & (1 << 3)) { gameState.p2Y    = view.getInt16(off); off += 2; }
+  if (mask & (1 << 4)) { gameState.dx     = view.getInt8(off);  off += 1; }
+  if (mask & (1 << 5)) { gameState.dy     = view.getInt8(off);  off += 1; }
+  if (mask & (1 << 6)) { gameState.score1 = view.getUint8(off); off += 1; }
+  if (mask & (1 << 7)) { gameState.score2 = view.getUint8(off); off += 1; }
+  if (mask & (1 << 8)) { gameState.winner = view.getUint8(off); off += 1; }
+  if (mask & (1 << 9)) {
+    const flags = view.getUint8(off);
+    gameState.ready1 = (flags & 1) !== 0;
+    gameState.ready2 = (flags & 2) !== 0;
+    gameState.paused = (flags & 4) !== 0;
+  }
+  // Input acks (1 << 10, 1 << 11) are for client-side prediction, which this page does not do
+}
+
 // ─── 6) After “OK”, Pick Player Slot ──────────────────────────────────────────
 function choosePlayerNumber() {
   while (true) {
@@ -112,7 +172,10 @@ function choosePlayerNumber() {
     const pNum    = parseInt(pNumStr, 10);
     if (pNum === 1 || pNum === 2) {
       playerNumber = pNum;
-      ws.send(JSON.stringify({ action: 'CHOOSE_PLAYER', p: playerNumber }));
+      const choose = { action: 'CHOOSE_PLAYER', p: playerNumber };
+      if (roomName) choose.room = roomName;
+      if (sendRate > 0) choose.rate = sendRate;
+      ws.send(JSON.stringify(choose));
       console.log(`Sent CHOOSE_PLAYER => ${playerNumber}`);
 
       // Update our info box right away:
@@ -125,16 +188,23 @@ function choosePlayerNumber() {
 }
 
 // ─── 7) Sending MOVE & CONTROL Commands ────────────────────────────────────────
+// Binary: MOVE = [0x10, i8 dir], CONTROL = [0x11, ControlCommand.Type ordinal]
+const CONTROL_ACTIONS = [ 'READY', 'PAUSE', 'RESUME', 'RESTART' ];
+
 function sendMove(dir) {
   if (ws && authenticated && playerNumber) {
-    const payload = JSON.stringify({ type: 'MOVE', dir });
+    const payload = binary
+      ? new Int8Array([ 0x10, dir ])
+      : JSON.stringify({ type: 'MOVE', dir });
     ws.send(payload);
   }
 }
 
 function sendControl(action) {
   if (ws && authenticated && playerNumber) {
-    const payload = JSON.stringify({ type: 'CONTROL', action });
+    const payload = binary
+      ? new Uint8Array([ 0x11, CONTROL_ACTIONS.indexOf(action) ])
+      : JSON.stringify({ type: 'CONTROL', action });
     ws.send(payload);
     console.log('Sent CONTROL:', action);
   }
@@ -0,0 +1,97 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * PongBatchVector.java
+ *
+ * PongBatch's per-tick fast path written with the Vector API, one match per SIMD
+ * lane: a 512-bit vector steps 16 matches' paddles and balls with a handful of
+ * instructions. For each group of lanes it
+ *   - moves and clamps both paddles,
+ *   - advances the ball and tests its end position against walls and paddle faces
+ *     with the same clearance margin as the scalar path,
+ *   - hands the lanes whose ball may touch something this tick (and any match whose
+ *     score could trigger a speed-up) to PongBatch's scalar code, one match at a time.
+ * Finished matches are masked out; matches past the last full group take the scalar path.
+ *
+ * PongBatch loads this class reflectively and falls back to its scalar loop if it
+ * is missing or jdk.incubator.vector is not available. It is kept out of the main
+ * source directory so the rest of the server builds without the incubator module:
+ *
+ *   javac -d out -cp "libs/*" *.java bench/*.java
+ *   javac --add-modules jdk.incubator.vector -d out -cp out vector/PongBatchVector.java
+ *   java --add-modules jdk.incubator.vector -cp "out:libs/*" PongBatchBenchmark
+ */
+final class PongBatchVector implements PongBatch.Kernel {
+    private static final VectorSpecies<Integer> LANES = IntVector.SPECIES_PREFERRED;
+
+    // Per-lane work left for the scalar code
+    private static final int FINISH = 1;  // difficulty check only
+    private static final int SWEEP  = 2;  // swept collision, then the difficulty check
+
+    // One group's lane marks, reused by every step (a batch, and so its kernel, has one thread)
+    private final int[] work = new int[LANES.length()];
+
+    @Override
+    public void step(PongBatch b, int paddleStep) {
+        int size = b.size();
+        int end = LANES.loopBound(size);
+        int i = 0;
+        int[] work = this.work;
+        for (; i < end; i += LANES.length()) {
+            VectorMask<Integer> live = IntVector.fromArray(LANES, b.winner, i).compare(VectorOperators.EQ, 0);
+            if (!live.anyTrue()) continue;
+
+            // Paddles
+            IntVector p1 = IntVector.fromArray(LANES, b.paddle1, i);
+            IntVector p2 = IntVector.fromArray(LANES, b.paddle2, i);
+            IntVector moved1 = p1.add(IntVector.fromArray(LANES, b.input1, i).mul(paddleStep))
+                                 .max(0).min(PongSimulation.PADDLE_MAX_Y);
+            IntVector moved2 = p2.add(IntVector.fromArray(LANES, b.input2, i).mul(paddleStep))
+                                 .max(0).min(PongSimulation.PADDLE_MAX_Y);
+            p1.blend(moved1, live).intoArray(b.paddle1, i);
+            p2.blend(moved2, live).intoArray(b.paddle2, i);
+
+            // Ball: take the step wherever it ends clear of every wall and paddle face
+            IntVector x  = IntVector.fromArray(LANES, b.ballX, i);
+            IntVector y  = IntVector.fromArray(LANES, b.ballY, i);
+            IntVector vx = IntVector.fromArray(LANES, b.vx, i);
+            IntVector vy = IntVector.fromArray(LANES, b.vy, i);
+            IntVector nx = x.add(vx);
+            IntVector ny = y.add(vy);
+            IntVector mx = clearance(vx);
+            IntVector my = clearance(vy);
+            VectorMask<Integer> clear = nx.sub(mx).compare(VectorOperators.GE, PongSimulation.LEFT_FACE_X)
+                    .and(nx.add(mx).compare(VectorOperators.LE, PongSimulation.RIGHT_FACE_X))
+                    .and(ny.sub(my).compare(VectorOperators.GE, 0))
+                    .and(ny.add(my).compare(VectorOperators.LE, PongSimulation.BALL_MAX_Y));
+            VectorMask<Integer> fast = live.and(clear);
+            x.blend(nx, fast).intoArray(b.ballX, i);
+            y.blend(ny, fast).intoArray(b.ballY, i);
+
+            // Scalar finish: sweeps, and the difficulty check wherever it could apply.
+            // (On JDK 17, mask andNot/toLong/laneIsSet are not intrinsics and would box a
+            // vector per group, so the lanes are marked in an array instead.)
+            IntVector total = IntVector.fromArray(LANES, b.score1, i).add(IntVector.fromArray(LANES, b.score2, i));
+            VectorMask<Integer> sweep = live.and(clear.not());
+            VectorMask<Integer> rest = sweep.or(live.and(total.compare(VectorOperators.GE, 10)));
+            if (rest.anyTrue()) {
+                IntVector.zero(LANES).blend(FINISH, rest).blend(SWEEP, sweep).intoArray(work, 0);
+                for (int lane = 0; lane < work.length; lane++) {
+                    if (work[lane] == SWEEP) b.sweep(i + lane);
+                    if (work[lane] != 0) b.checkDifficulty(i + lane);
+                }
+            }
+        }
+        for (; i < size; i++) {
+            if (b.winner[i] == 0) b.stepMatch(i, paddleStep);
+        }
+    }
+
+    /** PongBatch.clearance for every lane. */
+    private static IntVector clearance(IntVector v) {
+        return v.abs().lanewise(VectorOperators.LSHR, 15).add(2);
+    }
+}